@@ -0,0 +1,75 @@
+package me.zzpp.dynamic.benchmark;
+
+import me.zzpp.dynamic.core.DynamicClassLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DynamicClassLoader加载耗时：内存字节码 vs class文件目录
+ *
+ * @author zzpp
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassLoaderBenchmark {
+
+    private static final String CLASS_NAME = "me.zzpp.bench.Rule";
+
+    /**
+     * 源码方法个数，控制字节码大小
+     */
+    @Param({"1", "200"})
+    public int methods;
+
+    private Map<String, byte[]> classBytes;
+
+    private Path classDir;
+
+    private URL[] urls;
+
+    @Setup
+    public void setup() throws IOException {
+        classBytes = Sources.compile(CLASS_NAME, Sources.javaCode("me.zzpp.bench", "Rule", methods));
+        classDir = Files.createTempDirectory("dynamic-benchmark-class");
+        for (Map.Entry<String, byte[]> entry : classBytes.entrySet()) {
+            Path path = classDir.resolve(entry.getKey().replace('.', '/') + ".class");
+            Files.createDirectories(path.getParent());
+            Files.write(path, entry.getValue());
+        }
+        urls = new URL[]{classDir.toUri().toURL()};
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Sources.delete(classDir);
+    }
+
+    /**
+     * 从内存字节码定义class，并完成链接
+     */
+    @Benchmark
+    public Class<?> memory() throws Exception {
+        DynamicClassLoader loader = new DynamicClassLoader(classBytes, getClass().getClassLoader());
+        return Class.forName(CLASS_NAME, true, loader);
+    }
+
+    /**
+     * 从class文件目录加载class，并完成链接
+     */
+    @Benchmark
+    public Class<?> file() throws Exception {
+        try (DynamicClassLoader loader = new DynamicClassLoader(urls, getClass().getClassLoader())) {
+            return Class.forName(CLASS_NAME, true, loader);
+        }
+    }
+}
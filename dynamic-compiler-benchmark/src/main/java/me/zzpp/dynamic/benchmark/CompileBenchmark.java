@@ -0,0 +1,102 @@
+package me.zzpp.dynamic.benchmark;
+
+import me.zzpp.dynamic.core.handler.DefaultDynamicClassHandlerImpl;
+import me.zzpp.dynamic.core.handler.DynamicClassHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各编译方式的编译加载耗时，按源码大小与classpath大小参数化
+ * <p>
+ * cold：每次使用新的handler，包含编译器与文件管理器的初始化；warm：复用handler，每次编译不同版本的源码
+ *
+ * @author zzpp
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompileBenchmark {
+
+    /**
+     * 编译方式，Memory见loadClass的内存编译
+     */
+    @Param({"Task", "Javac", "Cmd", "Memory", "Worker"})
+    public DynamicClassHandler.CompilerType compilerType;
+
+    /**
+     * 源码方法个数，控制源码大小
+     */
+    @Param({"1", "200"})
+    public int methods;
+
+    /**
+     * classpath中的jar个数，每个jar包含200个class
+     */
+    @Param({"0", "20"})
+    public int jars;
+
+    private Path libDir;
+
+    private List<String> classPaths;
+
+    private List<String> deps;
+
+    private DynamicClassHandler handler;
+
+    private int revision;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        libDir = Files.createTempDirectory("dynamic-benchmark-lib");
+        classPaths = Sources.jars(libDir.toFile(), jars, 200);
+        deps = new ArrayList<>();
+        //javac方式不使用classpath，不引用依赖
+        if (DynamicClassHandler.CompilerType.Javac != compilerType) {
+            for (int i = 0; i < jars; i++) {
+                deps.add("me.zzpp.lib" + i + ".Dep" + i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        Sources.delete(libDir);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        handler = new DefaultDynamicClassHandlerImpl(compilerType);
+        handler.setClassLibPaths(classPaths);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        handler.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 10, batchSize = 1)
+    public Class<?> cold() throws Exception {
+        return handler.loadClass("Rule", nextCode());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    public Class<?> warm() throws Exception {
+        return handler.loadClass("Rule", nextCode());
+    }
+
+    private String nextCode() {
+        return Sources.javaCode("me.zzpp.bench", "Rule", methods, revision++, deps);
+    }
+}
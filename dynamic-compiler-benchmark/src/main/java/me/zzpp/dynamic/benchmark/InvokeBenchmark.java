@@ -0,0 +1,114 @@
+package me.zzpp.dynamic.benchmark;
+
+import me.zzpp.dynamic.core.handler.DefaultDynamicClassHandlerImpl;
+import me.zzpp.dynamic.core.handler.DynamicClassHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * invoke各重载方法的执行耗时，与直接调用、反射调用、bind对比
+ *
+ * @author zzpp
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvokeBenchmark {
+
+    private static final Class<?>[] INT_TYPES = new Class[]{int.class};
+
+    private static final Class<?>[] STRING_TYPES = new Class[]{String.class};
+
+    /**
+     * 非静态方法的实例作用域
+     */
+    @Param({"Prototype", "Singleton"})
+    public DynamicClassHandler.InstanceScope instanceScope;
+
+    private DynamicClassHandler handler;
+
+    private Class<?> clz;
+
+    private Method method;
+
+    private IntUnaryOperator bound;
+
+    private Function<String, String> boundInstance;
+
+    private int x = 7;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        handler = new DefaultDynamicClassHandlerImpl(DynamicClassHandler.CompilerType.Memory);
+        handler.setInstanceScope(instanceScope);
+        clz = handler.loadClass("Rule", Sources.javaCode("me.zzpp.bench", "Rule", 1));
+        method = clz.getMethod("square", int.class);
+        bound = handler.bind(clz, "square", IntUnaryOperator.class);
+        boundInstance = handler.bind(clz, "apply", Function.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.close();
+    }
+
+    @Benchmark
+    public int direct() {
+        return square(x);
+    }
+
+    @Benchmark
+    public Object reflect() throws Exception {
+        return method.invoke(null, x);
+    }
+
+    @Benchmark
+    public int bind() {
+        return bound.applyAsInt(x);
+    }
+
+    @Benchmark
+    public Object bindInstance() {
+        return boundInstance.apply("v");
+    }
+
+    @Benchmark
+    public Object invokeByName() {
+        return handler.invoke("Rule", "deps");
+    }
+
+    @Benchmark
+    public Object invokeByNameArgs() {
+        return handler.invoke("Rule", "square", INT_TYPES, new Object[]{x});
+    }
+
+    @Benchmark
+    public Object invokeByClass() {
+        return handler.invoke(clz, "deps");
+    }
+
+    @Benchmark
+    public Object invokeByClassArgs() throws Exception {
+        return handler.invoke(clz, "square", INT_TYPES, new Object[]{x});
+    }
+
+    /**
+     * 非静态方法，按instanceScope获取实例
+     */
+    @Benchmark
+    public Object invokeInstance() throws Exception {
+        return handler.invoke(clz, "apply", null, DynamicClassHandler.InvokeArgs.builder().parameterTypes(STRING_TYPES).args(new Object[]{"v"}).build());
+    }
+
+    private static int square(int x) {
+        return x * x;
+    }
+}
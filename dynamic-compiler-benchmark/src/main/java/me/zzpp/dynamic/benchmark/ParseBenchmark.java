@@ -0,0 +1,82 @@
+package me.zzpp.dynamic.benchmark;
+
+import me.zzpp.dynamic.core.utils.DynamicClassUtils;
+import me.zzpp.dynamic.core.utils.JavaSourceScanner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 源码解析：单次扫描 vs 原正则实现（每次调用重新编译Pattern）
+ *
+ * @author zzpp
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    private static final String REX_NAME = "class[\\s*](.*?)[\\s*].*\\{?";
+
+    private static final String PACKAGE_NAME = "package?(.*?);";
+
+    /**
+     * 源码方法个数，控制源码大小
+     */
+    @Param({"1", "50", "500"})
+    public int methods;
+
+    private String javaCode;
+
+    @Setup
+    public void setup() {
+        javaCode = Sources.javaCode("me.zzpp.bench", "Rule", methods);
+    }
+
+    @Benchmark
+    public void scanner(Blackhole blackhole) {
+        JavaSourceScanner.SourceInfo info = DynamicClassUtils.scan(javaCode);
+        String className = DynamicClassUtils.getClassName(javaCode, info);
+        blackhole.consume(className);
+        blackhole.consume(DynamicClassUtils.getPackageName(javaCode, info));
+        blackhole.consume(DynamicClassUtils.replaceClassName("Rule2", javaCode, info));
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        //与loadClass原有流程一致：getClassName、replaceClassName、getPackageName各匹配一次
+        blackhole.consume(regexClassName(javaCode));
+        blackhole.consume(regexReplaceClassName("Rule2", javaCode));
+        blackhole.consume(regexPackageName(javaCode));
+    }
+
+    private static String regexClassName(String javaCode) {
+        Matcher matcher = Pattern.compile(REX_NAME).matcher(javaCode);
+        if (matcher.find(0)) {
+            return matcher.group().replaceAll(REX_NAME, "$1").trim();
+        }
+        throw new IllegalStateException();
+    }
+
+    private static String regexReplaceClassName(String className, String javaCode) {
+        Matcher matcher = Pattern.compile(REX_NAME).matcher(javaCode);
+        if (matcher.find()) {
+            return javaCode.substring(0, matcher.start(1)) + className + javaCode.substring(matcher.end(1));
+        }
+        return javaCode;
+    }
+
+    private static String regexPackageName(String javaCode) {
+        Matcher matcher = Pattern.compile(PACKAGE_NAME).matcher(javaCode);
+        if (matcher.find(0)) {
+            return matcher.group().replaceAll(PACKAGE_NAME, "$1").trim();
+        }
+        return "";
+    }
+}
@@ -0,0 +1,150 @@
+package me.zzpp.dynamic.benchmark;
+
+import me.zzpp.dynamic.core.compiler.MemoryJavaFileManager;
+import me.zzpp.dynamic.core.compiler.MemoryJavaFileObject;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * 生成基准测试使用的java源码
+ *
+ * @author zzpp
+ */
+final class Sources {
+
+    private Sources() {
+    }
+
+    /**
+     * 生成源码
+     *
+     * @param packageName 包名
+     * @param className   类名
+     * @param methods     方法个数，控制源码大小
+     * @return java源码
+     */
+    static String javaCode(String packageName, String className, int methods) {
+        return javaCode(packageName, className, methods, 0, Collections.emptyList());
+    }
+
+    /**
+     * 生成源码
+     *
+     * @param packageName 包名
+     * @param className   类名
+     * @param methods     方法个数，控制源码大小
+     * @param revision    版本号，不同版本生成不同的源码
+     * @param deps        引用的classpath依赖，需要包含静态方法value()
+     * @return java源码
+     */
+    static String javaCode(String packageName, String className, int methods, int revision, List<String> deps) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("package ").append(packageName).append(";\n\n")
+                .append("import java.util.ArrayList;\n")
+                .append("import java.util.List;\n\n")
+                .append("/**\n * generated class for benchmark\n */\n")
+                .append("public class ").append(className).append(" {\n\n")
+                .append("    private final List<String> values = new ArrayList<>();\n\n")
+                .append("    public static final int REVISION = ").append(revision).append(";\n\n")
+                .append("    public static int square(int x) {\n        return x * x;\n    }\n\n")
+                .append("    public String apply(String value) {\n        return value + \"-\" + values.size();\n    }\n");
+        for (int i = 0; i < methods; i++) {
+            builder.append("\n    // method ").append(i).append(" of class ").append(className).append("\n")
+                    .append("    public int method").append(i).append("(int x) {\n")
+                    .append("        String s = \"class Fake").append(i).append(" {\";\n")
+                    .append("        return x + s.length() + ").append(i).append(";\n")
+                    .append("    }\n");
+        }
+        builder.append("\n    public static int deps() {\n        int sum = 0;\n");
+        for (String dep : deps) {
+            builder.append("        sum += ").append(dep).append(".value();\n");
+        }
+        return builder.append("        return sum;\n    }\n}\n").toString();
+    }
+
+    /**
+     * 内存编译源码，用于准备加载与执行的基准数据
+     *
+     * @param className 全限定类名
+     * @param javaCode  java源码
+     * @return 字节码（包含内部类）
+     */
+    static Map<String, byte[]> compile(String className, String javaCode) throws IOException {
+        return compile(Collections.singletonList(new MemoryJavaFileObject(className, javaCode)));
+    }
+
+    /**
+     * 内存编译，多个源码在同一个编译任务中完成
+     *
+     * @param javaFileObjects 源码
+     * @return 字节码
+     */
+    static Map<String, byte[]> compile(List<MemoryJavaFileObject> javaFileObjects) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (MemoryJavaFileManager fileManager = new MemoryJavaFileManager(compiler.getStandardFileManager(null, null, null))) {
+            Boolean call = compiler.getTask(null, fileManager, null, Arrays.asList("-encoding", "utf-8"), null, javaFileObjects).call();
+            if (!Boolean.TRUE.equals(call)) {
+                throw new IllegalStateException("compile failed: " + javaFileObjects.get(0).getClassName());
+            }
+            return fileManager.getClassBytes();
+        }
+    }
+
+    /**
+     * 生成classpath依赖jar，每个jar位于独立的包下
+     *
+     * @param dir     输出目录
+     * @param jars    jar个数
+     * @param classes 每个jar的class个数
+     * @return jar绝对路径
+     */
+    static List<String> jars(File dir, int jars, int classes) throws IOException {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < jars; i++) {
+            File jar = new File(dir, "lib-" + i + ".jar");
+            List<MemoryJavaFileObject> javaFileObjects = new ArrayList<>();
+            for (int j = 0; j < classes; j++) {
+                String javaCode = "package me.zzpp.lib" + i + ";\npublic class Dep" + j + " {\n    public static int value() {\n        return " + j + ";\n    }\n}\n";
+                javaFileObjects.add(new MemoryJavaFileObject("me.zzpp.lib" + i + ".Dep" + j, javaCode));
+            }
+            try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+                for (Map.Entry<String, byte[]> entry : compile(javaFileObjects).entrySet()) {
+                    out.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+                    out.write(entry.getValue());
+                    out.closeEntry();
+                }
+            }
+            paths.add(jar.getAbsolutePath());
+        }
+        return paths;
+    }
+
+    /**
+     * 删除目录
+     *
+     * @param dir 目录
+     */
+    static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package me.zzpp.dynamic.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * lib目录的class/资源索引，包名到jar、资源名到jar，查找为一次hash命中。
+ * 每个lib目录只建立一次并持久化到目录下，jar名称、大小、修改时间不变时直接读取
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class ClassPathIndex {
+
+    /**
+     * 持久化文件名
+     */
+    public static final String INDEX_FILE = ".dynamic-classpath.idx";
+
+    private static final int VERSION = 2;
+
+    /**
+     * 已加载的索引，key:lib目录绝对路径
+     */
+    private static final Map<String, ClassPathIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final String fingerprint;
+
+    private final File[] jars;
+
+    /**
+     * key:资源名（如a/b/C.class） value:jar下标，多个jar存在同名资源时取第一个
+     */
+    private final Map<String, Integer> entries;
+
+    /**
+     * key:包名（如a.b） value:jar下标
+     */
+    private final Map<String, int[]> packages;
+
+    private ClassPathIndex(String fingerprint, File[] jars, Map<String, Integer> entries) {
+        this.fingerprint = fingerprint;
+        this.jars = jars;
+        this.entries = entries;
+        Map<String, Set<Integer>> packages = new HashMap<>();
+        entries.forEach((name, jar) -> {
+            int i = name.lastIndexOf('/');
+            String packageName = i < 0 ? "" : name.substring(0, i).replace('/', '.');
+            packages.computeIfAbsent(packageName, k -> new TreeSet<>()).add(jar);
+        });
+        this.packages = new HashMap<>(packages.size() * 2);
+        packages.forEach((name, set) -> this.packages.put(name, set.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * 获取lib目录的索引，jar变化时重新建立
+     *
+     * @param libDir lib目录
+     * @return 索引
+     * @throws IOException 读取jar失败
+     */
+    public static ClassPathIndex of(File libDir) throws IOException {
+        File[] jars = libDir.listFiles((dir, name) -> name.endsWith(".jar"));
+        if (null == jars) {
+            throw new FileNotFoundException(libDir.getAbsolutePath());
+        }
+        Arrays.sort(jars);
+        String fingerprint = fingerprint(jars);
+        String key = libDir.getAbsolutePath();
+        ClassPathIndex index = INDEXES.get(key);
+        if (null != index && index.fingerprint.equals(fingerprint)) {
+            return index;
+        }
+        synchronized (INDEXES) {
+            index = INDEXES.get(key);
+            if (null != index && index.fingerprint.equals(fingerprint)) {
+                return index;
+            }
+            long start = System.currentTimeMillis();
+            File file = new File(libDir, INDEX_FILE);
+            index = read(file, fingerprint, jars);
+            if (null == index) {
+                index = build(fingerprint, jars);
+                write(file, index);
+                log.info("class path index built, dir:{} jars:{} entries:{} time consuming:{}ms", key, jars.length, index.entries.size(), System.currentTimeMillis() - start);
+            } else {
+                log.info("class path index loaded, dir:{} jars:{} entries:{} time consuming:{}ms", key, jars.length, index.entries.size(), System.currentTimeMillis() - start);
+            }
+            INDEXES.put(key, index);
+            return index;
+        }
+    }
+
+    /**
+     * class是否在lib中
+     *
+     * @param className 全限定类名
+     * @return 是否存在
+     */
+    public boolean contains(String className) {
+        return entries.containsKey(className.replace('.', '/').concat(".class"));
+    }
+
+    /**
+     * 资源是否在lib中
+     *
+     * @param name 资源名，如a/b/c.xml
+     * @return 是否存在
+     */
+    public boolean containsResource(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * 资源所在的jar
+     *
+     * @param name 资源名
+     * @return jar，不存在时返回null
+     */
+    public File jar(String name) {
+        Integer i = entries.get(name);
+        return null == i ? null : jars[i];
+    }
+
+    /**
+     * 包含该包的jar
+     *
+     * @param packageName 包名
+     * @return jar，不存在时为空
+     */
+    public List<File> jars(String packageName) {
+        int[] indexes = packages.get(packageName);
+        return null == indexes ? Collections.emptyList() : Arrays.stream(indexes).mapToObj(i -> jars[i]).collect(Collectors.toList());
+    }
+
+    /**
+     * @return 全部包名
+     */
+    public Set<String> packages() {
+        return Collections.unmodifiableSet(packages.keySet());
+    }
+
+    /**
+     * @return 全部jar的url，顺序与索引一致
+     */
+    public URL[] urls() {
+        URL[] urls = new URL[jars.length];
+        for (int i = 0; i < jars.length; i++) {
+            try {
+                urls[i] = jars[i].toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * jar名称、大小、修改时间的SHA-256，长度固定，jar数量多时也能以writeUTF写入
+     */
+    private static String fingerprint(File[] jars) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (File jar : jars) {
+            digest.update((jar.getName() + ':' + jar.length() + ':' + jar.lastModified() + '|').getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static ClassPathIndex build(String fingerprint, File[] jars) {
+        //并行读取各jar的目录
+        List<List<String>> names = IntStream.range(0, jars.length).parallel().mapToObj(i -> {
+            List<String> list = new ArrayList<>();
+            try (ZipFile zip = new ZipFile(jars[i])) {
+                Enumeration<? extends ZipEntry> enums = zip.entries();
+                while (enums.hasMoreElements()) {
+                    ZipEntry entry = enums.nextElement();
+                    if (!entry.isDirectory()) {
+                        list.add(entry.getName());
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("class path index skip jar:{}, {}", jars[i], e.getMessage());
+            }
+            return list;
+        }).collect(Collectors.toList());
+        Map<String, Integer> entries = new HashMap<>(names.stream().mapToInt(List::size).sum() * 4 / 3 + 1);
+        for (int i = 0; i < names.size(); i++) {
+            for (String name : names.get(i)) {
+                entries.putIfAbsent(name, i);
+            }
+        }
+        return new ClassPathIndex(fingerprint, jars, entries);
+    }
+
+    private static ClassPathIndex read(File file, String fingerprint, File[] jars) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16))) {
+            if (in.readInt() != VERSION || !fingerprint.equals(in.readUTF())) {
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, Integer> entries = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                entries.put(in.readUTF(), in.readInt());
+            }
+            return new ClassPathIndex(fingerprint, jars, entries);
+        } catch (IOException e) {
+            log.warn("class path index read failed, rebuild, path:{}, {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入临时文件后替换，目录不可写时只保留在内存中
+     */
+    private static void write(File file, ClassPathIndex index) {
+        File temp = new File(file.getParentFile(), file.getName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 1 << 16))) {
+                out.writeInt(VERSION);
+                out.writeUTF(index.fingerprint);
+                out.writeInt(index.entries.size());
+                for (Map.Entry<String, Integer> entry : index.entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("class path index write failed, path:{}, {}", file, e.getMessage());
+            boolean delete = temp.delete();
+        }
+    }
+}
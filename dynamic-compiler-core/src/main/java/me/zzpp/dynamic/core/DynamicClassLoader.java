@@ -2,8 +2,15 @@ package me.zzpp.dynamic.core;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * 自定义classloader
@@ -11,53 +18,187 @@ import java.net.URLClassLoader;
 @Slf4j
 public class DynamicClassLoader extends URLClassLoader {
 
-//    private String classPath;
+    /**
+     * 内存中的字节码，key:全限定类名
+     */
+    protected final Map<String, byte[]> classBytes;
+
+    /**
+     * 解析其他动态class，返回null时继续从urls查找
+     */
+    private final Function<String, Class<?>> peers;
+
+    /**
+     * 父加载器classpath的索引，为空时按默认双亲委派查找
+     */
+    private final ClassPathIndex index;
+
+    /**
+     * 父加载器中查找失败的class，开启索引时缓存，再次查找不再经过父加载器
+     */
+    private final Set<String> parentMisses = ConcurrentHashMap.newKeySet();
 
     public DynamicClassLoader(URL[] urls, ClassLoader parent) {
         super(urls, parent);
+        this.classBytes = Collections.emptyMap();
+        this.peers = name -> null;
+        this.index = null;
     }
 
-//    @Override
-//    protected Class<?> findClass(String name) throws ClassNotFoundException {
-//        try {
-//            return super.findClass(name);
-//        } catch (Exception e) {
-//            log.error(e.getMessage(), e);
-//        }
-//        String className = name.replace('.', '/').concat(".class");
-//        try {
-//            byte[] classByte = getClassByte(className);
-//            return defineClass(name, classByte, 0, classByte.length);
-//        } catch (Exception e) {
-//            throw new ClassNotFoundException(name, e);
-//        }
-//    }
-//
-//    private byte[] getClassByte(String className) throws ClassNotFoundException {
-//        String realPath = this.classPath + className;
-//        File f = new File(realPath);
-//        if (f.exists()) {
-//            byte[] bytes = new byte[0];
-//            try {
-//                FileInputStream fis = new FileInputStream(f);
-//                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-//                int len;
-//                byte[] buffer = new byte[1024];
-//                while ((len = fis.read(buffer)) != -1) {
-//                    baos.write(buffer, 0, len);
-//                }
-//                bytes = baos.toByteArray();
-//                fis.close();
-//                baos.close();
-//            } catch (Exception e) {
-//                e.printStackTrace();
-//            }
-//            log.info("class loader read file:{} success", realPath);
-//            return bytes;
-//        } else {
-//            log.error("class loader read file:{} error", realPath);
-//            throw new ClassNotFoundException(className);
-//        }
-//    }
-}
+    /**
+     * 从索引中的jar加载class，索引中不存在的class与资源不再遍历jar
+     *
+     * @param index  lib目录索引
+     * @param parent 父加载器
+     */
+    public DynamicClassLoader(ClassPathIndex index, ClassLoader parent) {
+        super(index.urls(), parent);
+        this.classBytes = Collections.emptyMap();
+        this.peers = name -> null;
+        this.index = index;
+    }
+
+    /**
+     * 直接从内存字节码加载class
+     *
+     * @param classBytes key:全限定类名 value:字节码
+     * @param parent     父加载器
+     */
+    public DynamicClassLoader(Map<String, byte[]> classBytes, ClassLoader parent) {
+        this(classBytes, parent, name -> null);
+    }
 
+    /**
+     * 直接从内存字节码加载class，引用的其他动态class由peers解析
+     *
+     * @param classBytes key:全限定类名 value:字节码
+     * @param parent     父加载器
+     * @param peers      按全限定类名解析其他动态class，不存在时返回null
+     */
+    public DynamicClassLoader(Map<String, byte[]> classBytes, ClassLoader parent, Function<String, Class<?>> peers) {
+        this(classBytes, parent, peers, null);
+    }
+
+    /**
+     * 直接从内存字节码加载class，父加载器的classpath由index描述：
+     * 不在index中的动态class直接从内存加载，不再遍历父加载器
+     *
+     * @param classBytes key:全限定类名 value:字节码
+     * @param parent     父加载器
+     * @param peers      按全限定类名解析其他动态class，不存在时返回null
+     * @param index      父加载器classpath的索引，可为空
+     */
+    public DynamicClassLoader(Map<String, byte[]> classBytes, ClassLoader parent, Function<String, Class<?>> peers, ClassPathIndex index) {
+        super(new URL[0], parent);
+        this.classBytes = classBytes;
+        this.peers = peers;
+        this.index = index;
+    }
+
+    /**
+     * 在当前loader中定义辅助class，已定义时直接返回
+     *
+     * @param name  全限定类名
+     * @param bytes 字节码
+     * @return class
+     */
+    public Class<?> defineHelperClass(String name, byte[] bytes) {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loaded = findLoadedClass(name);
+            if (null != loaded) {
+                return loaded;
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (null == index || null == getParent()) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (null == c && !index.contains(name)) {
+                //lib中不存在，动态class直接加载
+                c = findLocalClass(name);
+            }
+            if (null == c && !parentMisses.contains(name)) {
+                try {
+                    c = getParent().loadClass(name);
+                } catch (ClassNotFoundException e) {
+                    parentMisses.add(name);
+                }
+            }
+            if (null == c) {
+                c = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> c = findLocalClass(name);
+        if (null != c) {
+            return c;
+        }
+        if (null != index && !index.contains(name)) {
+            throw new ClassNotFoundException(name);
+        }
+        return super.findClass(name);
+    }
+
+    /**
+     * @return 内存中的全限定类名
+     */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(classBytes.keySet());
+    }
+
+    /**
+     * 父加载器与urls中不存在时，返回内存中的字节码，供编译时读取
+     */
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        InputStream in = super.getResourceAsStream(name);
+        if (null == in && name.endsWith(".class")) {
+            byte[] bytes = classBytes.get(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+            if (null != bytes) {
+                return new ByteArrayInputStream(bytes);
+            }
+        }
+        return in;
+    }
+
+    @Override
+    public URL findResource(String name) {
+        if (null != index && !index.containsResource(name)) {
+            return null;
+        }
+        return super.findResource(name);
+    }
+
+    /**
+     * 从内存字节码或其他动态class中查找
+     *
+     * @param name 全限定类名
+     * @return class，不存在时返回null
+     */
+    private Class<?> findLocalClass(String name) {
+        byte[] bytes = classBytes.get(name);
+        if (null != bytes) {
+            log.debug("class loader define class:{} from memory", name);
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+        return peers.apply(name);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+    }
+}
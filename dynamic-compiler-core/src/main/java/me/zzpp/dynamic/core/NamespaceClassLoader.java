@@ -0,0 +1,87 @@
+package me.zzpp.dynamic.core;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 命名空间classloader，同一命名空间的动态class共用一个loader，可以直接互相引用。
+ * 成员class优先从自身加载（child-first），新成员直接加入当前loader；已有成员重新加载时需要创建新一代loader
+ *
+ * @author zzpp
+ */
+public class NamespaceClassLoader extends DynamicClassLoader {
+
+    private final String namespace;
+
+    private final int generation;
+
+    /**
+     * @param namespace  命名空间
+     * @param generation 第几代loader
+     * @param classBytes 成员的字节码，key:全限定类名
+     * @param parent     父加载器
+     * @param peers      解析其他动态class
+     * @param index      父加载器classpath的索引，可为空
+     */
+    public NamespaceClassLoader(String namespace, int generation, Map<String, byte[]> classBytes, ClassLoader parent, Function<String, Class<?>> peers, ClassPathIndex index) {
+        super(new ConcurrentHashMap<>(classBytes), parent, peers, index);
+        this.namespace = namespace;
+        this.generation = generation;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 是否已包含任意一个class，已包含的class无法在当前loader中重新定义
+     *
+     * @param names 全限定类名
+     * @return 是否包含
+     */
+    public boolean contains(Collection<String> names) {
+        for (String name : names) {
+            if (classBytes.containsKey(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 加入新成员，在首次加载时定义
+     *
+     * @param classBytes key:全限定类名 value:字节码
+     */
+    public void add(Map<String, byte[]> classBytes) {
+        this.classBytes.putAll(classBytes);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!classBytes.containsKey(name)) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (null == c) {
+                c = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[" + namespace + "#" + generation + "]";
+    }
+}
@@ -0,0 +1,240 @@
+package me.zzpp.dynamic.core.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 编译结果缓存，按 hash(源码 + classpath指纹 + 编译参数) 寻址，同时记录引用的其他动态class的摘要，命中时校验。
+ * 字节码持久化到本地目录，重启后依然有效；超过容量时按LRU淘汰
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class ByteCodeCache {
+
+    private static final String SUFFIX = ".bytecode";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * 文件格式版本，记录依赖摘要之前的格式读取时按损坏处理
+     */
+    private static final int MAGIC = 0xCAFED00E;
+
+    private final File directory;
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    /**
+     * key -> 文件大小，按访问顺序排列
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    /**
+     * @param directory  持久化目录
+     * @param maxEntries 最大缓存条数
+     * @param maxBytes   最大缓存字节数
+     */
+    public ByteCodeCache(File directory, int maxEntries, long maxBytes) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        boolean mkdirs = directory.mkdirs();
+        log.info("byte code cache directory path:{} mkdirs:{}", directory.getAbsolutePath(), mkdirs);
+        load();
+    }
+
+    public ByteCodeCache(File directory, int maxEntries) {
+        this(directory, maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * 计算缓存key
+     *
+     * @param javaCode    java源码
+     * @param fingerprint classpath指纹与编译参数，不包含其他动态class，其他动态class的变化由依赖摘要校验
+     * @return sha-256
+     */
+    public static String key(String javaCode, String fingerprint) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(javaCode.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            byte[] hash = digest.digest();
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 获取缓存的字节码，引用的其他动态class已变化时视为未命中，重新编译后由{@link #put}覆盖
+     *
+     * @param key          缓存key
+     * @param dependencies 根据缓存的字节码计算当前引用的其他动态class的摘要，与写入时记录的摘要一致才命中
+     * @return 字节码，未命中返回null
+     */
+    public Map<String, byte[]> get(String key, Function<Map<String, byte[]>, Map<String, String>> dependencies) {
+        synchronized (index) {
+            if (null == index.get(key)) {
+                return null;
+            }
+        }
+        File file = file(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("bad magic");
+            }
+            int count = in.readInt();
+            Map<String, byte[]> classBytes = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String className = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classBytes.put(className, bytes);
+            }
+            Map<String, String> digests = new TreeMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                digests.put(in.readUTF(), in.readUTF());
+            }
+            if (!digests.equals(dependencies.apply(classBytes))) {
+                log.debug("byte code cache stale key:{}, dependencies changed", key);
+                return null;
+            }
+            //记录访问时间，重启后保持LRU顺序
+            boolean touch = file.setLastModified(System.currentTimeMillis());
+            log.debug("byte code cache hit key:{} touch:{}", key, touch);
+            return classBytes;
+        } catch (IOException e) {
+            log.warn("byte code cache read {} failed, errMsg : {}", file.getAbsolutePath(), e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param key          缓存key
+     * @param classBytes   字节码
+     * @param dependencies 编译时引用的其他动态class的摘要，key:全限定类名
+     */
+    public void put(String key, Map<String, byte[]> classBytes, Map<String, String> dependencies) {
+        File file = file(key);
+        File tempFile = new File(directory, key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(classBytes.size());
+                for (Map.Entry<String, byte[]> entry : classBytes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+                out.writeInt(dependencies.size());
+                for (Map.Entry<String, String> entry : dependencies.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("byte code cache write {} failed, errMsg : {}", file.getAbsolutePath(), e.getMessage());
+            boolean delete = tempFile.delete();
+            log.debug("byte code cache delete temp file {}", delete);
+            return;
+        }
+        synchronized (index) {
+            Long old = index.put(key, file.length());
+            totalBytes += file.length() - (null == old ? 0 : old);
+            evict();
+        }
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param key 缓存key
+     */
+    public void remove(String key) {
+        synchronized (index) {
+            Long old = index.remove(key);
+            if (null != old) {
+                totalBytes -= old;
+            }
+        }
+        boolean delete = file(key).delete();
+        log.debug("byte code cache remove key:{} delete:{}", key, delete);
+    }
+
+    /**
+     * 当前缓存条数
+     *
+     * @return size
+     */
+    public int size() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    /**
+     * 启动时加载已持久化的缓存，按最后访问时间恢复LRU顺序；删除上次写入中断遗留的临时文件
+     */
+    private void load() {
+        File[] temps = directory.listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+        if (null != temps) {
+            for (File temp : temps) {
+                boolean delete = temp.delete();
+                log.debug("byte code cache delete stale temp file {} delete:{}", temp.getName(), delete);
+            }
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (null == files) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        synchronized (index) {
+            for (File file : files) {
+                String name = file.getName();
+                long length = file.length();
+                index.put(name.substring(0, name.length() - SUFFIX.length()), length);
+                totalBytes += length;
+            }
+            evict();
+        }
+        log.info("byte code cache loaded {} entries from {}", index.size(), directory.getAbsolutePath());
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+        while ((index.size() > maxEntries || totalBytes > maxBytes) && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            boolean delete = file(eldest.getKey()).delete();
+            log.debug("byte code cache evict key:{} delete:{}", eldest.getKey(), delete);
+        }
+    }
+
+    private File file(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+}
@@ -0,0 +1,31 @@
+package me.zzpp.dynamic.core.compiler;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量编译结果
+ *
+ * @author zzpp
+ */
+@Data
+public class BatchCompileResult {
+
+    /**
+     * 是否全部编译成功，同一批次任意单元编译失败时不会加载任何class
+     */
+    private boolean success;
+
+    /**
+     * 加载后的class，key:传入的className
+     */
+    private final Map<String, Class<?>> classes = new LinkedHashMap<>();
+
+    /**
+     * 各单元的诊断信息，key:传入的className；无法定位到单元的诊断会记录到每个单元
+     */
+    private final Map<String, List<CompileDiagnostic>> diagnostics = new LinkedHashMap<>();
+}
@@ -0,0 +1,70 @@
+package me.zzpp.dynamic.core.compiler;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * CLASS_PATH中的class全部由{@link CompileClassPath}提供（如可执行jar、宿主classloader），其他位置交给被包装的文件管理器。
+ * 只包装一次编译，关闭时不会关闭被包装的文件管理器与classpath
+ *
+ * @author zzpp
+ */
+public class ClassPathJavaFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+    private final CompileClassPath classPath;
+
+    public ClassPathJavaFileManager(JavaFileManager fileManager, CompileClassPath classPath) {
+        super(fileManager);
+        this.classPath = classPath;
+    }
+
+    @Override
+    public boolean hasLocation(Location location) {
+        return StandardLocation.CLASS_PATH == location || super.hasLocation(location);
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        if (StandardLocation.CLASS_PATH != location) {
+            return super.list(location, packageName, kinds, recurse);
+        }
+        if (!kinds.contains(JavaFileObject.Kind.CLASS)) {
+            return Collections.emptyList();
+        }
+        return classPath.list(packageName, recurse);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForInput(Location location, String className, JavaFileObject.Kind kind) throws IOException {
+        if (StandardLocation.CLASS_PATH == location) {
+            return JavaFileObject.Kind.CLASS == kind ? classPath.find(className) : null;
+        }
+        return super.getJavaFileForInput(location, className, kind);
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        String binaryName = classPath.binaryName(file);
+        return null != binaryName ? binaryName : super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean isSameFile(FileObject a, FileObject b) {
+        if (a instanceof JavaFileObject && null != classPath.binaryName((JavaFileObject) a)
+                || b instanceof JavaFileObject && null != classPath.binaryName((JavaFileObject) b)) {
+            return a.toUri().equals(b.toUri());
+        }
+        return super.isSameFile(a, b);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
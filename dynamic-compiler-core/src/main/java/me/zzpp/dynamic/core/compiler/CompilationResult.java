@@ -0,0 +1,61 @@
+package me.zzpp.dynamic.core.compiler;
+
+import lombok.Data;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 单次编译结果，编译过程中收集的诊断信息
+ *
+ * @author zzpp
+ */
+@Data
+public class CompilationResult {
+
+    /**
+     * 编译的全限定类名，多个单元时以逗号分隔
+     */
+    private final String className;
+
+    /**
+     * 是否编译成功
+     */
+    private final boolean success;
+
+    /**
+     * 诊断信息，按javac报告的顺序
+     */
+    private final List<CompileDiagnostic> diagnostics;
+
+    /**
+     * 转换javac的诊断信息，源码文件（非内存源码）的诊断归属到className
+     *
+     * @param className   全限定类名
+     * @param success     是否编译成功
+     * @param diagnostics javac诊断
+     * @return 编译结果
+     */
+    public static CompilationResult of(String className, boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        List<CompileDiagnostic> list = new ArrayList<>(diagnostics.size());
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            CompileDiagnostic compileDiagnostic = CompileDiagnostic.of(diagnostic);
+            JavaFileObject source = diagnostic.getSource();
+            if (null != source && !(source instanceof MemoryJavaFileObject) && JavaFileObject.Kind.SOURCE == source.getKind()) {
+                compileDiagnostic.setClassName(className);
+            }
+            list.add(compileDiagnostic);
+        }
+        return new CompilationResult(className, success, list);
+    }
+
+    /**
+     * @return 级别为ERROR的诊断信息
+     */
+    public List<CompileDiagnostic> getErrors() {
+        return diagnostics.stream().filter(diagnostic -> Diagnostic.Kind.ERROR == diagnostic.getKind()).collect(Collectors.toList());
+    }
+}
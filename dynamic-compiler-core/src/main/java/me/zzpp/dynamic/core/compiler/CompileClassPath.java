@@ -0,0 +1,44 @@
+package me.zzpp.dynamic.core.compiler;
+
+import javax.tools.JavaFileObject;
+import java.util.List;
+
+/**
+ * 编译classpath，代替文件管理器的CLASS_PATH，见{@link ClassPathJavaFileManager}
+ *
+ * @author zzpp
+ */
+public interface CompileClassPath {
+
+    /**
+     * 列出包下的class
+     *
+     * @param packageName 包名
+     * @param recurse     是否包含子包
+     * @return class
+     */
+    List<JavaFileObject> list(String packageName, boolean recurse);
+
+    /**
+     * 查找class
+     *
+     * @param className 全限定类名
+     * @return class，不存在时返回null
+     */
+    JavaFileObject find(String className);
+
+    /**
+     * 由当前classpath提供的class文件的全限定类名
+     *
+     * @param fileObject 文件
+     * @return 全限定类名，不是当前classpath提供的文件时返回null
+     */
+    String binaryName(JavaFileObject fileObject);
+
+    /**
+     * classpath指纹，用于编译结果缓存
+     *
+     * @return 指纹
+     */
+    String fingerprint();
+}
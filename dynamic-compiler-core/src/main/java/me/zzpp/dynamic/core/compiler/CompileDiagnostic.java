@@ -0,0 +1,77 @@
+package me.zzpp.dynamic.core.compiler;
+
+import lombok.Builder;
+import lombok.Data;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.util.Locale;
+
+/**
+ * 编译诊断信息
+ *
+ * @author zzpp
+ */
+@Data
+@Builder
+public class CompileDiagnostic {
+
+    /**
+     * 级别：ERROR、WARNING等
+     */
+    private Diagnostic.Kind kind;
+
+    /**
+     * 所属的全限定类名，无法定位到源码时为空
+     */
+    private String className;
+
+    /**
+     * 行号，从1开始，未知时为-1
+     */
+    private long line;
+
+    /**
+     * 列号，从1开始，未知时为-1
+     */
+    private long column;
+
+    /**
+     * javac的诊断code，例如 compiler.err.cant.resolve.location
+     */
+    private String code;
+
+    /**
+     * 诊断信息
+     */
+    private String message;
+
+    /**
+     * 转换javac的诊断信息
+     *
+     * @param diagnostic javac诊断
+     * @return CompileDiagnostic
+     */
+    public static CompileDiagnostic of(Diagnostic<? extends JavaFileObject> diagnostic) {
+        JavaFileObject source = diagnostic.getSource();
+        String className = null;
+        if (source instanceof MemoryJavaFileObject) {
+            className = ((MemoryJavaFileObject) source).getClassName();
+        } else if (null != source) {
+            className = source.getName();
+        }
+        return CompileDiagnostic.builder()
+                .kind(diagnostic.getKind())
+                .className(className)
+                .line(diagnostic.getLineNumber())
+                .column(diagnostic.getColumnNumber())
+                .code(diagnostic.getCode())
+                .message(diagnostic.getMessage(Locale.getDefault()))
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s:%d:%d %s", kind, className, line, column, message);
+    }
+}
@@ -0,0 +1,113 @@
+package me.zzpp.dynamic.core.compiler;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 有界的编译线程池。
+ * 队列满时直接拒绝（返回失败的future）形成背压；超时或取消会中断编译线程，避免失控的编译占满线程池
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class CompileExecutor implements Closeable {
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService timer;
+
+    private final long defaultTimeoutMillis;
+
+    /**
+     * @param threads              编译线程数
+     * @param queueCapacity        等待队列长度
+     * @param defaultTimeoutMillis 默认超时时间，小于等于0不超时
+     */
+    public CompileExecutor(int threads, int queueCapacity, long defaultTimeoutMillis) {
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> daemon(r, "dynamic-compile-" + index.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "dynamic-compile-timer"));
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    /**
+     * 默认：线程数为cpu核数，队列256，超时60秒
+     */
+    public CompileExecutor() {
+        this(Runtime.getRuntime().availableProcessors(), 256, TimeUnit.SECONDS.toMillis(60));
+    }
+
+    /**
+     * 使用默认超时时间提交编译任务
+     *
+     * @param task 编译任务
+     * @return future，取消时会中断编译
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        return submit(task, defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交编译任务
+     *
+     * @param task    编译任务
+     * @param timeout 超时时间，小于等于0不超时
+     * @param unit    时间单位
+     * @return future，超时以TimeoutException结束，取消时会中断编译
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task, long timeout, TimeUnit unit) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("compile executor is saturated, active:{} queued:{}", executor.getActiveCount(), executor.getQueue().size());
+            future.completeExceptionally(e);
+            return future;
+        }
+        if (timeout > 0) {
+            ScheduledFuture<?> timeoutFuture = timer.schedule(() -> {
+                if (future.completeExceptionally(new TimeoutException("compile timeout after " + unit.toMillis(timeout) + "ms"))) {
+                    log.warn("compile task timeout after {}ms, interrupt", unit.toMillis(timeout));
+                }
+            }, timeout, unit);
+            future.whenComplete((r, e) -> timeoutFuture.cancel(false));
+        }
+        //超时、取消时中断编译线程
+        future.whenComplete((r, e) -> {
+            if (null != e) {
+                running.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+        log.info("compile executor closed");
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,47 @@
+package me.zzpp.dynamic.core.compiler;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+import javax.tools.JavaCompiler;
+import java.util.concurrent.CancellationException;
+
+/**
+ * javac本身不响应线程中断，在每个编译阶段检查中断标记，被中断时终止编译
+ *
+ * @author zzpp
+ */
+public class CompileInterrupter implements TaskListener {
+
+    private static final CompileInterrupter INSTANCE = new CompileInterrupter();
+
+    /**
+     * 为编译任务注册中断检查
+     *
+     * @param compilationTask 编译任务
+     * @return 编译任务
+     */
+    public static JavaCompiler.CompilationTask interruptible(JavaCompiler.CompilationTask compilationTask) {
+        if (compilationTask instanceof JavacTask) {
+            ((JavacTask) compilationTask).addTaskListener(INSTANCE);
+        }
+        return compilationTask;
+    }
+
+    @Override
+    public void started(TaskEvent e) {
+        check();
+    }
+
+    @Override
+    public void finished(TaskEvent e) {
+        check();
+    }
+
+    private void check() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("compile interrupted");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package me.zzpp.dynamic.core.compiler;
+
+/**
+ * 动态编译失败，携带编译诊断信息，异常信息中包含全部错误的行号、列号与原因
+ *
+ * @author zzpp
+ */
+public class DynamicCompileException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient CompilationResult result;
+
+    /**
+     * @param message 失败说明，如动态编译失败，className ...
+     * @param result  编译结果
+     */
+    public DynamicCompileException(String message, CompilationResult result) {
+        super(message(message, result));
+        this.result = result;
+    }
+
+    /**
+     * @return 编译结果，包含诊断信息
+     */
+    public CompilationResult getResult() {
+        return result;
+    }
+
+    private static String message(String message, CompilationResult result) {
+        StringBuilder builder = new StringBuilder(message);
+        for (CompileDiagnostic error : result.getErrors()) {
+            builder.append(System.lineSeparator()).append(error);
+        }
+        return builder.toString();
+    }
+}
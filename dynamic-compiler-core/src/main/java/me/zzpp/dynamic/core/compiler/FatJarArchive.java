@@ -0,0 +1,280 @@
+package me.zzpp.dynamic.core.compiler;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zzpp.dynamic.core.utils.ContentDigest;
+import me.zzpp.dynamic.core.utils.MappedZipFile;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * spring boot可执行jar的编译classpath，BOOT-INF/classes与BOOT-INF/lib下的jar直接从内存映射中读取，无需解压。
+ * 创建时建立包索引，之后只读，线程安全
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class FatJarArchive implements CompileClassPath, Closeable {
+
+    private static final String BOOT_INF_CLASSES = "BOOT-INF/classes/";
+
+    private static final String BOOT_INF_LIB = "BOOT-INF/lib/";
+
+    private static final String CLASS_SUFFIX = JavaFileObject.Kind.CLASS.extension;
+
+    private final File file;
+
+    private final String version;
+
+    private final MappedZipFile zip;
+
+    private final String fingerprint;
+
+    /**
+     * key:包名 value:包下的class，同名class只保留classpath中的第一个
+     */
+    private final Map<String, List<ArchiveClassFileObject>> packages = new HashMap<>();
+
+    /**
+     * 进行中的编译数，最高位为已停用标记，停用后由最后一次编译归还时关闭，见{@link JavaFileManagerPool#borrowClassPath(CompileClassPath)}
+     */
+    private final AtomicLong borrowed = new AtomicLong();
+
+    /**
+     * 打开可执行jar并建立包索引
+     *
+     * @param file spring boot可执行jar
+     * @throws IOException 读取失败
+     */
+    public FatJarArchive(File file) throws IOException {
+        long start = System.currentTimeMillis();
+        this.file = file;
+        this.version = version(file);
+        this.zip = new MappedZipFile(file);
+        this.fingerprint = file.getName() + ":" + ContentDigest.of(zip);
+        Set<String> binaryNames = new HashSet<>();
+        List<MappedZipFile.Entry> libs = new ArrayList<>();
+        int count = 0;
+        for (MappedZipFile.Entry entry : zip.entries()) {
+            String name = entry.getName();
+            if (name.startsWith(BOOT_INF_CLASSES)) {
+                count += index(zip, entry, name.substring(BOOT_INF_CLASSES.length()), binaryNames);
+            } else if (name.startsWith(BOOT_INF_LIB) && name.endsWith(".jar")) {
+                libs.add(entry);
+            }
+        }
+        for (MappedZipFile.Entry lib : libs) {
+            //未压缩的jar直接使用外层映射的切片
+            MappedZipFile nested = zip.nested(lib);
+            for (MappedZipFile.Entry entry : nested.entries()) {
+                count += index(nested, entry, entry.getName(), binaryNames);
+            }
+        }
+        log.info("fat jar archive opened, path:{} libs:{} classes:{} time consuming:{}ms", file.getAbsolutePath(), libs.size(), count, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 当前进程以java -jar启动的spring boot可执行jar
+     *
+     * @return 可执行jar，不是以可执行jar启动时返回null
+     */
+    public static File runningJar() {
+        String classPath = System.getProperty("java.class.path", "");
+        if (classPath.isEmpty() || classPath.contains(File.pathSeparator) || !classPath.endsWith(".jar")) {
+            return null;
+        }
+        File file = new File(classPath);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (MappedZipFile jar = new MappedZipFile(file)) {
+            return null != jar.getEntry(BOOT_INF_CLASSES) || null != jar.getEntry(BOOT_INF_LIB) ? file : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * jar的路径、大小、修改时间，变化后需要重新打开
+     *
+     * @param file jar
+     * @return 版本
+     */
+    public static String version(File file) {
+        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * jar名称与中央目录摘要，lib中jar的crc覆盖其全部内容；重新部署后修改时间变化也能命中编译结果缓存
+     */
+    @Override
+    public String fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public List<JavaFileObject> list(String packageName, boolean recurse) {
+        List<JavaFileObject> list = new ArrayList<>(packages.getOrDefault(packageName, Collections.emptyList()));
+        if (recurse) {
+            String prefix = packageName.isEmpty() ? "" : packageName + ".";
+            packages.forEach((name, classes) -> {
+                if (name.startsWith(prefix) && !name.equals(packageName)) {
+                    list.addAll(classes);
+                }
+            });
+        }
+        return list;
+    }
+
+    @Override
+    public JavaFileObject find(String className) {
+        int index = className.lastIndexOf('.');
+        String packageName = index < 0 ? "" : className.substring(0, index);
+        for (ArchiveClassFileObject fileObject : packages.getOrDefault(packageName, Collections.emptyList())) {
+            if (fileObject.binaryName.equals(className)) {
+                return fileObject;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String binaryName(JavaFileObject fileObject) {
+        return fileObject instanceof ArchiveClassFileObject ? ((ArchiveClassFileObject) fileObject).binaryName : null;
+    }
+
+    /**
+     * 编译开始时借用
+     *
+     * @return 已停用时返回false
+     */
+    boolean retain() {
+        long state;
+        do {
+            state = borrowed.get();
+            if (state < 0) {
+                return false;
+            }
+        } while (!borrowed.compareAndSet(state, state + 1));
+        return true;
+    }
+
+    /**
+     * 编译结束时归还，已停用且没有其他进行中的编译时关闭
+     */
+    void release() {
+        if (borrowed.decrementAndGet() == Long.MIN_VALUE) {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * 停用，jar被替换或池关闭时调用；没有进行中的编译时立即关闭，否则由最后一次编译归还时关闭
+     */
+    void retire() {
+        if (borrowed.getAndUpdate(state -> state | Long.MIN_VALUE) == 0) {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * 关闭文件，映射由GC释放，已借出的class文件仍可读取
+     */
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+    @Override
+    public String toString() {
+        return file.getAbsolutePath();
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            log.warn("fat jar archive close failed:{}, errMsg : {}", file, e.getMessage());
+        }
+    }
+
+    private int index(MappedZipFile zip, MappedZipFile.Entry entry, String path, Set<String> binaryNames) {
+        if (!path.endsWith(CLASS_SUFFIX) || path.startsWith("META-INF/") || path.endsWith("module-info.class")) {
+            return 0;
+        }
+        String binaryName = path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.');
+        if (!binaryNames.add(binaryName)) {
+            return 0;
+        }
+        int index = binaryName.lastIndexOf('.');
+        String packageName = index < 0 ? "" : binaryName.substring(0, index);
+        packages.computeIfAbsent(packageName, k -> new ArrayList<>()).add(new ArchiveClassFileObject(zip, entry, binaryName));
+        return 1;
+    }
+
+    private static URI uri(MappedZipFile zip, MappedZipFile.Entry entry) {
+        try {
+            //SimpleJavaFileObject需要带路径的uri，嵌套jar以!/分隔
+            String path = zip.getName().replace('\\', '/');
+            return new URI("fatjar", null, (path.startsWith("/") ? "" : "/") + path + "!/" + entry.getName(), null);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static final class ArchiveClassFileObject extends SimpleJavaFileObject {
+
+        private final MappedZipFile zip;
+
+        private final MappedZipFile.Entry entry;
+
+        private final String binaryName;
+
+        private ArchiveClassFileObject(MappedZipFile zip, MappedZipFile.Entry entry, String binaryName) {
+            super(uri(zip, entry), Kind.CLASS);
+            this.zip = zip;
+            this.entry = entry;
+            this.binaryName = binaryName;
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            return zip.getInputStream(entry);
+        }
+
+        @Override
+        public String getName() {
+            return zip.getName() + "(" + entry.getName() + ")";
+        }
+
+        @Override
+        public boolean isNameCompatible(String simpleName, Kind kind) {
+            if (Kind.CLASS != kind) {
+                return false;
+            }
+            String name = entry.getName();
+            return name.endsWith("/" + simpleName + CLASS_SUFFIX) || name.equals(simpleName + CLASS_SUFFIX);
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package me.zzpp.dynamic.core.compiler;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zzpp.dynamic.core.DynamicClassLoader;
+import me.zzpp.dynamic.core.utils.ContentDigest;
+import me.zzpp.dynamic.core.utils.MappedZipFile;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 宿主classloader层级的编译classpath，动态源码可以直接引用宿主应用中的class。
+ * 创建时按父加载器优先的顺序扫描各层classloader建立包索引：URLClassLoader的目录与jar（包括spring boot的嵌套jar）、
+ * java9以上应用类加载器的java.class.path、内存中的{@link DynamicClassLoader}；
+ * class字节码在编译用到时才通过所属classloader的getResourceAsStream读取
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class HostClassPath implements CompileClassPath {
+
+    private static final String CLASS_SUFFIX = JavaFileObject.Kind.CLASS.extension;
+
+    /**
+     * key:包名 value:包下的class，同名class只保留父加载器中的
+     */
+    private final Map<String, List<HostClassFileObject>> packages = new HashMap<>();
+
+    /**
+     * 本地文件形式的classpath，外部javac进程使用
+     */
+    private final List<String> files = new ArrayList<>();
+
+    private final StringBuilder fingerprint = new StringBuilder("host");
+
+    /**
+     * 扫描classloader层级，不包含平台类加载器
+     *
+     * @param classLoader 宿主classloader，一般为线程上下文classloader
+     */
+    public HostClassPath(ClassLoader classLoader) {
+        long start = System.currentTimeMillis();
+        Deque<ClassLoader> loaders = new ArrayDeque<>();
+        ClassLoader system = ClassLoader.getSystemClassLoader();
+        ClassLoader platform = system.getParent();
+        for (ClassLoader loader = classLoader; null != loader && loader != platform; loader = loader.getParent()) {
+            loaders.push(loader);
+        }
+        Set<String> binaryNames = new HashSet<>();
+        Set<String> roots = new HashSet<>();
+        Map<String, MappedZipFile> outers = new HashMap<>();
+        try {
+            for (ClassLoader loader : loaders) {
+                if (loader instanceof URLClassLoader) {
+                    for (URL url : ((URLClassLoader) loader).getURLs()) {
+                        if (roots.add(url.toString())) {
+                            root(loader, url, binaryNames, outers);
+                        }
+                    }
+                } else if (loader == system) {
+                    for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+                        if (!path.isEmpty() && roots.add(path)) {
+                            file(loader, new File(path), binaryNames);
+                        }
+                    }
+                } else {
+                    log.debug("host class path skip class loader:{}", loader);
+                }
+                if (loader instanceof DynamicClassLoader) {
+                    for (String name : ((DynamicClassLoader) loader).getClassNames()) {
+                        index(loader, name.replace('.', '/').concat(CLASS_SUFFIX), binaryNames);
+                    }
+                }
+            }
+        } finally {
+            for (MappedZipFile outer : outers.values()) {
+                try {
+                    outer.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        log.info("host class path built, loader:{} roots:{} classes:{} time consuming:{}ms", classLoader, roots.size(), binaryNames.size(), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public List<JavaFileObject> list(String packageName, boolean recurse) {
+        List<JavaFileObject> list = new ArrayList<>(packages.getOrDefault(packageName, Collections.emptyList()));
+        if (recurse) {
+            String prefix = packageName.isEmpty() ? "" : packageName + ".";
+            packages.forEach((name, classes) -> {
+                if (name.startsWith(prefix) && !name.equals(packageName)) {
+                    list.addAll(classes);
+                }
+            });
+        }
+        return list;
+    }
+
+    @Override
+    public JavaFileObject find(String className) {
+        int index = className.lastIndexOf('.');
+        String packageName = index < 0 ? "" : className.substring(0, index);
+        for (HostClassFileObject fileObject : packages.getOrDefault(packageName, Collections.emptyList())) {
+            if (fileObject.binaryName.equals(className)) {
+                return fileObject;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String binaryName(JavaFileObject fileObject) {
+        return fileObject instanceof HostClassFileObject ? ((HostClassFileObject) fileObject).binaryName : null;
+    }
+
+    @Override
+    public String fingerprint() {
+        return fingerprint.toString();
+    }
+
+    /**
+     * @return 本地目录与jar，不包含嵌套jar与内存中的class
+     */
+    public List<String> files() {
+        return Collections.unmodifiableList(files);
+    }
+
+    private void root(ClassLoader loader, URL url, Set<String> binaryNames, Map<String, MappedZipFile> outers) {
+        try {
+            if ("file".equals(url.getProtocol())) {
+                file(loader, Paths.get(url.toURI()).toFile(), binaryNames);
+            } else if ("jar".equals(url.getProtocol())) {
+                nested(loader, url.toString().substring("jar:".length()), binaryNames, outers);
+            } else {
+                log.debug("host class path skip url:{}", url);
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            log.warn("host class path skip url:{}, {}", url, e.getMessage());
+        }
+    }
+
+    private void file(ClassLoader loader, File file, Set<String> binaryNames) {
+        fingerprint.append('|').append(file.getName()).append(':').append(ContentDigest.of(file));
+        if (file.isDirectory()) {
+            files.add(file.getAbsolutePath());
+            Path root = file.toPath();
+            try (Stream<Path> stream = Files.walk(root)) {
+                stream.filter(path -> path.toString().endsWith(CLASS_SUFFIX))
+                        .forEach(path -> index(loader, root.relativize(path).toString().replace(File.separatorChar, '/'), binaryNames));
+            } catch (IOException e) {
+                log.warn("host class path skip directory:{}, {}", file, e.getMessage());
+            }
+        } else if (file.isFile()) {
+            files.add(file.getAbsolutePath());
+            try (MappedZipFile zip = new MappedZipFile(file)) {
+                for (MappedZipFile.Entry entry : zip.entries()) {
+                    index(loader, entry.getName(), binaryNames);
+                }
+            } catch (IOException e) {
+                log.warn("host class path skip jar:{}, {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * spring boot的嵌套url：2.x为file:/app.jar!/BOOT-INF/lib/a.jar!/，3.2以上为nested:/app.jar/!BOOT-INF/lib/a.jar!/
+     */
+    private void nested(ClassLoader loader, String spec, Set<String> binaryNames, Map<String, MappedZipFile> outers) throws IOException, URISyntaxException {
+        String outer;
+        String inner;
+        if (spec.startsWith("nested:")) {
+            int index = spec.indexOf("/!");
+            outer = URLDecoder.decode(spec.substring("nested:".length(), index), StandardCharsets.UTF_8.name());
+            inner = spec.substring(index + 2);
+        } else {
+            int index = spec.indexOf("!/");
+            outer = Paths.get(new URI(spec.substring(0, index))).toString();
+            inner = spec.substring(index + 2);
+        }
+        if (inner.endsWith("!/")) {
+            inner = inner.substring(0, inner.length() - 2);
+        }
+        MappedZipFile zip = outers.get(outer);
+        if (null == zip) {
+            zip = new MappedZipFile(new File(outer));
+            outers.put(outer, zip);
+            //外层jar的中央目录摘要覆盖BOOT-INF/classes与lib中jar的内容
+            fingerprint.append('|').append(new File(outer).getName()).append(':').append(ContentDigest.of(zip));
+        }
+        fingerprint.append('|').append(inner);
+        if (inner.endsWith(".jar")) {
+            MappedZipFile.Entry entry = zip.getEntry(inner);
+            if (null == entry) {
+                return;
+            }
+            fingerprint.append(':').append(Long.toHexString(entry.getCrc()));
+            for (MappedZipFile.Entry nested : zip.nested(entry).entries()) {
+                index(loader, nested.getName(), binaryNames);
+            }
+        } else {
+            String prefix = inner.isEmpty() || inner.endsWith("/") ? inner : inner + "/";
+            for (MappedZipFile.Entry entry : zip.entries()) {
+                if (entry.getName().startsWith(prefix)) {
+                    index(loader, entry.getName().substring(prefix.length()), binaryNames);
+                }
+            }
+        }
+    }
+
+    private void index(ClassLoader loader, String path, Set<String> binaryNames) {
+        if (!path.endsWith(CLASS_SUFFIX) || path.startsWith("META-INF/") || path.endsWith("module-info.class")) {
+            return;
+        }
+        String binaryName = path.substring(0, path.length() - CLASS_SUFFIX.length()).replace('/', '.');
+        if (!binaryNames.add(binaryName)) {
+            return;
+        }
+        int index = binaryName.lastIndexOf('.');
+        String packageName = index < 0 ? "" : binaryName.substring(0, index);
+        packages.computeIfAbsent(packageName, k -> new ArrayList<>()).add(new HostClassFileObject(loader, path, binaryName));
+    }
+
+    private static URI uri(String path) {
+        try {
+            return new URI("host", null, "/" + path, null);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static final class HostClassFileObject extends SimpleJavaFileObject {
+
+        /**
+         * 扫描到该class的classloader，父加载器中不存在同名class，由它读取字节码；
+         * 弱引用，classpath按classloader缓存时不阻止其回收
+         */
+        private final WeakReference<ClassLoader> loader;
+
+        private final String path;
+
+        private final String binaryName;
+
+        private HostClassFileObject(ClassLoader loader, String path, String binaryName) {
+            super(uri(path), Kind.CLASS);
+            this.loader = new WeakReference<>(loader);
+            this.path = path;
+            this.binaryName = binaryName;
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            ClassLoader classLoader = loader.get();
+            InputStream in = null == classLoader ? null : classLoader.getResourceAsStream(path);
+            if (null == in) {
+                throw new FileNotFoundException(path + " in " + classLoader);
+            }
+            return in;
+        }
+    }
+}
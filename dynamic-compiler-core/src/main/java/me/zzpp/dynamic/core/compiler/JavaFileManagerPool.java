@@ -0,0 +1,267 @@
+package me.zzpp.dynamic.core.compiler;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zzpp.dynamic.core.utils.ContentDigest;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * 文件管理器池，按classpath复用{@link StandardJavaFileManager}，避免每次编译重新打开、扫描全部jar。
+ * 线程安全，同一个文件管理器同一时间只借给一次编译使用
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class JavaFileManagerPool implements Closeable {
+
+    /**
+     * 每个classpath最多保留的空闲文件管理器数量
+     */
+    private static final int DEFAULT_MAX_IDLE = 4;
+
+    private final JavaCompiler compiler;
+
+    private final int maxIdle;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 已打开的可执行jar，key:jar绝对路径
+     */
+    private final Map<String, FatJarArchive> archives = new ConcurrentHashMap<>();
+
+    /**
+     * 宿主classloader的classpath，classloader被回收后随之释放
+     */
+    private final Map<ClassLoader, HostClassPath> hostClassPaths = new WeakHashMap<>();
+
+    private volatile boolean closed;
+
+    public JavaFileManagerPool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    public JavaFileManagerPool(int maxIdle) {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * 获取复用的编译器
+     *
+     * @return JavaCompiler
+     */
+    public JavaCompiler getCompiler() {
+        return compiler;
+    }
+
+    /**
+     * 借出文件管理器，使用完毕必须调用{@link #release(PooledJavaFileManager)}归还
+     *
+     * @param key        classpath key
+     * @param classPaths classpath列表
+     * @return 文件管理器
+     * @throws IOException
+     */
+    public PooledJavaFileManager borrow(String key, List<String> classPaths) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("file manager pool is closed");
+        }
+        String fingerprint = fingerprint(classPaths);
+        Entry entry = entries.compute(key, (k, old) -> {
+            if (null != old && old.fingerprint.equals(fingerprint)) {
+                return old;
+            }
+            if (null != old) {
+                log.info("file manager pool classpath changed, invalidate key:{}", k);
+                old.closeAll();
+            }
+            return new Entry(fingerprint);
+        });
+        PooledJavaFileManager fileManager = entry.idle.pollFirst();
+        if (null != fileManager) {
+            return fileManager;
+        }
+        log.debug("file manager pool create file manager, key:{}", key);
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        if (!classPaths.isEmpty()) {
+            List<File> files = new ArrayList<>(classPaths.size());
+            for (String classPath : classPaths) {
+                files.add(new File(classPath));
+            }
+            standardFileManager.setLocation(StandardLocation.CLASS_PATH, files);
+        }
+        return new PooledJavaFileManager(standardFileManager, key, fingerprint, !classPaths.isEmpty());
+    }
+
+    /**
+     * 获取可执行jar的classpath，jar变化后重新打开
+     *
+     * @param jar spring boot可执行jar
+     * @return classpath
+     * @throws IOException 读取失败
+     */
+    public FatJarArchive archive(File jar) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("file manager pool is closed");
+        }
+        String key = jar.getAbsolutePath();
+        String version = FatJarArchive.version(jar);
+        FatJarArchive archive = archives.get(key);
+        if (null != archive && archive.getVersion().equals(version)) {
+            return archive;
+        }
+        synchronized (archives) {
+            archive = archives.get(key);
+            if (null != archive && archive.getVersion().equals(version)) {
+                return archive;
+            }
+            if (null != archive) {
+                log.info("file manager pool fat jar changed, reopen:{}", key);
+                archive.retire();
+            }
+            archive = new FatJarArchive(jar);
+            archives.put(key, archive);
+            return archive;
+        }
+    }
+
+    /**
+     * 借用编译classpath，使用完毕必须调用{@link #releaseClassPath(CompileClassPath)}归还。
+     * 可执行jar已替换时改用新版本，旧版本在进行中的编译全部归还后关闭
+     *
+     * @param classPath 编译classpath，可为空
+     * @return 借用的classpath
+     * @throws IOException 重新打开可执行jar失败
+     */
+    public CompileClassPath borrowClassPath(CompileClassPath classPath) throws IOException {
+        if (!(classPath instanceof FatJarArchive)) {
+            return classPath;
+        }
+        FatJarArchive archive = (FatJarArchive) classPath;
+        while (!archive.retain()) {
+            archive = archive(archive.getFile());
+        }
+        return archive;
+    }
+
+    /**
+     * 归还编译classpath
+     *
+     * @param classPath {@link #borrowClassPath(CompileClassPath)}的返回值
+     */
+    public void releaseClassPath(CompileClassPath classPath) {
+        if (classPath instanceof FatJarArchive) {
+            ((FatJarArchive) classPath).release();
+        }
+    }
+
+    /**
+     * 获取宿主classloader层级的classpath，每个classloader只扫描一次
+     *
+     * @param classLoader 宿主classloader
+     * @return classpath
+     */
+    public HostClassPath hostClassPath(ClassLoader classLoader) {
+        synchronized (hostClassPaths) {
+            return hostClassPaths.computeIfAbsent(classLoader, HostClassPath::new);
+        }
+    }
+
+    /**
+     * 归还文件管理器，classpath已失效或池已关闭时直接关闭
+     *
+     * @param fileManager 文件管理器
+     */
+    public void release(PooledJavaFileManager fileManager) {
+        Entry entry = entries.get(fileManager.key);
+        if (!closed && null != entry && entry.fingerprint.equals(fileManager.fingerprint) && entry.idle.size() < maxIdle) {
+            entry.idle.offerFirst(fileManager);
+            //并发关闭时兜底
+            if (closed) {
+                entry.closeAll();
+            }
+            return;
+        }
+        close(fileManager);
+    }
+
+    /**
+     * 丢弃文件管理器，编译异常（例如被中断）后调用，不再放回池中
+     *
+     * @param fileManager 文件管理器
+     */
+    public void discard(PooledJavaFileManager fileManager) {
+        log.debug("file manager pool discard file manager, key:{}", fileManager.key);
+        close(fileManager);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        entries.values().forEach(Entry::closeAll);
+        entries.clear();
+        archives.values().forEach(FatJarArchive::retire);
+        archives.clear();
+        synchronized (hostClassPaths) {
+            hostClassPaths.clear();
+        }
+        log.info("file manager pool closed");
+    }
+
+    /**
+     * jar取与编译结果缓存相同的内容摘要（见{@link ContentDigest}），摘要按路径、大小与修改时间缓存，内容不变时重新部署不会失效；
+     * 目录的内容由文件管理器每次编译时重新列出，只取路径
+     */
+    private static String fingerprint(List<String> classPaths) {
+        StringBuilder builder = new StringBuilder();
+        for (String classPath : classPaths) {
+            File file = new File(classPath);
+            builder.append(classPath).append('|');
+            if (!file.isDirectory()) {
+                builder.append(ContentDigest.of(file));
+            }
+            builder.append(';');
+        }
+        return builder.toString();
+    }
+
+    private static void close(Closeable fileManager) {
+        try {
+            fileManager.close();
+        } catch (IOException e) {
+            log.warn("file manager close failed, errMsg : {}", e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+
+        private final String fingerprint;
+
+        private final ConcurrentLinkedDeque<PooledJavaFileManager> idle = new ConcurrentLinkedDeque<>();
+
+        private Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        private void closeAll() {
+            PooledJavaFileManager fileManager;
+            while ((fileManager = idle.pollFirst()) != null) {
+                close(fileManager);
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package me.zzpp.dynamic.core.compiler;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 一个javac工作进程，通过管道与{@link JavacWorkerMain}通信，同一时间只被一个调用方借用
+ *
+ * @author zzpp
+ */
+@Slf4j
+class JavacWorker {
+
+    private final int id;
+
+    private final Process process;
+
+    private final DataInputStream in;
+
+    private final DataOutputStream out;
+
+    /**
+     * 已完成的编译次数
+     */
+    private int compiles;
+
+    private long lastUsed = System.currentTimeMillis();
+
+    JavacWorker(int id, List<String> command) throws IOException {
+        this.id = id;
+        this.process = new ProcessBuilder(command).start();
+        this.in = new DataInputStream(new BufferedInputStream(process.getInputStream(), 1 << 16));
+        this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), 1 << 16));
+        Thread drain = new Thread(this::drain, "javac-worker-" + id + "-stderr");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    /**
+     * 编译，诊断信息按源码类名关联到对应的源码文件
+     *
+     * @param classPaths  classpath
+     * @param fingerprint classpath内容摘要，变化后进程重新打开classpath
+     * @param options     编译参数
+     * @param peers       其他动态class的字节码
+     * @param sources     源码
+     * @param diagnostics 诊断信息监听，可为空
+     * @return 字节码，编译失败返回null
+     * @throws IOException 进程异常退出
+     */
+    Map<String, byte[]> compile(List<String> classPaths, String fingerprint, List<String> options, Map<String, byte[]> peers,
+                                List<MemoryJavaFileObject> sources, DiagnosticListener<? super JavaFileObject> diagnostics) throws IOException {
+        out.writeInt(JavacWorkerMain.COMPILE);
+        out.writeInt(classPaths.size());
+        for (String classPath : classPaths) {
+            out.writeUTF(classPath);
+        }
+        out.writeUTF(fingerprint);
+        out.writeInt(options.size());
+        for (String option : options) {
+            out.writeUTF(option);
+        }
+        out.writeInt(peers.size());
+        for (Map.Entry<String, byte[]> entry : peers.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeBytes(entry.getValue());
+        }
+        out.writeInt(sources.size());
+        Map<String, MemoryJavaFileObject> sourceMap = new HashMap<>();
+        for (MemoryJavaFileObject source : sources) {
+            sourceMap.put(source.getClassName(), source);
+            out.writeUTF(source.getClassName());
+            writeBytes(source.getCharContent(true).toString().getBytes(StandardCharsets.UTF_8));
+        }
+        out.flush();
+        boolean success = in.readBoolean();
+        for (int i = in.readInt(); i > 0; i--) {
+            WorkerDiagnostic diagnostic = new WorkerDiagnostic(Diagnostic.Kind.valueOf(in.readUTF()), sourceMap.get(in.readUTF()),
+                    in.readLong(), in.readLong(), in.readUTF(), new String(readBytes(), StandardCharsets.UTF_8));
+            if (null != diagnostics) {
+                diagnostics.report(diagnostic);
+            } else if (Diagnostic.Kind.ERROR == diagnostic.getKind()) {
+                log.warn("javac worker-{} {}", id, diagnostic);
+            }
+        }
+        Map<String, byte[]> classBytes = new LinkedHashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            classBytes.put(in.readUTF(), readBytes());
+        }
+        compiles++;
+        lastUsed = System.currentTimeMillis();
+        return success ? classBytes : null;
+    }
+
+    /**
+     * 健康检查
+     *
+     * @return 进程是否正常响应
+     */
+    boolean ping() {
+        try {
+            out.writeInt(JavacWorkerMain.PING);
+            out.flush();
+            boolean alive = JavacWorkerMain.PING == in.readInt();
+            lastUsed = System.currentTimeMillis();
+            return alive;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    int getCompiles() {
+        return compiles;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * 通知进程退出，未及时退出时强制结束
+     */
+    void close() {
+        try {
+            out.writeInt(JavacWorkerMain.EXIT);
+            out.flush();
+        } catch (IOException ignored) {
+        }
+        destroy();
+    }
+
+    /**
+     * 强制结束进程，阻塞在读写上的调用方会收到IOException
+     */
+    void destroy() {
+        process.destroyForcibly();
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private byte[] readBytes() throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private void drain() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                log.info("javac worker-{}:{}", id, line);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "javac-worker-" + id;
+    }
+
+    /**
+     * 工作进程返回的诊断信息
+     */
+    private static final class WorkerDiagnostic implements Diagnostic<JavaFileObject> {
+
+        private final Kind kind;
+
+        private final JavaFileObject source;
+
+        private final long line;
+
+        private final long column;
+
+        private final String code;
+
+        private final String message;
+
+        private WorkerDiagnostic(Kind kind, JavaFileObject source, long line, long column, String code, String message) {
+            this.kind = kind;
+            this.source = source;
+            this.line = line;
+            this.column = column;
+            this.code = code.isEmpty() ? null : code;
+            this.message = message;
+        }
+
+        @Override
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public JavaFileObject getSource() {
+            return source;
+        }
+
+        @Override
+        public long getPosition() {
+            return NOPOS;
+        }
+
+        @Override
+        public long getStartPosition() {
+            return NOPOS;
+        }
+
+        @Override
+        public long getEndPosition() {
+            return NOPOS;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return column;
+        }
+
+        @Override
+        public String getCode() {
+            return code;
+        }
+
+        @Override
+        public String getMessage(Locale locale) {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return (null == source ? "" : source.getName() + ":" + line + ": ") + kind.name().toLowerCase() + ": " + message;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package me.zzpp.dynamic.core.compiler;
+
+import javax.tools.*;
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * javac工作进程入口，由{@link JavacWorkerPool}启动，通过标准输入输出交换请求与结果，进程常驻复用已加载的javac与classpath。
+ * 只依赖jdk，可以单独复制到临时目录运行；标准输出只用于协议，其他输出重定向到标准错误
+ *
+ * @author zzpp
+ */
+public final class JavacWorkerMain {
+
+    static final int COMPILE = 1;
+
+    static final int PING = 2;
+
+    static final int EXIT = 3;
+
+    /**
+     * 缓存的classpath数量，超过后全部关闭
+     */
+    private static final int MAX_FILE_MANAGERS = 8;
+
+    private JavacWorkerMain() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in, 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16));
+        System.setOut(System.err);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Map<String, StandardJavaFileManager> fileManagers = new HashMap<>();
+        Map<String, String> fingerprints = new HashMap<>();
+        while (true) {
+            int op;
+            try {
+                op = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if (PING == op) {
+                out.writeInt(PING);
+                out.flush();
+            } else if (COMPILE == op) {
+                compile(compiler, fileManagers, fingerprints, in, out);
+                out.flush();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * file manager按classpath缓存，请求带有classpath的内容摘要，摘要变化时关闭旧的重新打开
+     */
+    private static void compile(JavaCompiler compiler, Map<String, StandardJavaFileManager> fileManagers, Map<String, String> fingerprints,
+                                DataInputStream in, DataOutputStream out) throws IOException {
+        List<File> classPaths = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            classPaths.add(new File(in.readUTF()));
+        }
+        String fingerprint = in.readUTF();
+        List<String> options = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            options.add(in.readUTF());
+        }
+        Map<String, byte[]> peers = new HashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            peers.put(in.readUTF(), readBytes(in));
+        }
+        List<MemoryFile> sources = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String className = in.readUTF();
+            sources.add(MemoryFile.source(className, new String(readBytes(in), StandardCharsets.UTF_8)));
+        }
+        String key = classPaths.toString();
+        StandardJavaFileManager standardFileManager = fileManagers.get(key);
+        if (null != standardFileManager && !fingerprint.equals(fingerprints.get(key))) {
+            fileManagers.remove(key).close();
+            standardFileManager = null;
+        }
+        if (null == standardFileManager) {
+            if (fileManagers.size() >= MAX_FILE_MANAGERS) {
+                for (StandardJavaFileManager fileManager : fileManagers.values()) {
+                    fileManager.close();
+                }
+                fileManagers.clear();
+                fingerprints.clear();
+            }
+            standardFileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+            if (!classPaths.isEmpty()) {
+                standardFileManager.setLocation(StandardLocation.CLASS_PATH, classPaths);
+            }
+            fileManagers.put(key, standardFileManager);
+            fingerprints.put(key, fingerprint);
+        }
+        DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+        WorkerFileManager fileManager = new WorkerFileManager(standardFileManager, peers);
+        boolean success;
+        try {
+            success = Boolean.TRUE.equals(compiler.getTask(null, fileManager, collector, options, null, sources).call());
+        } catch (RuntimeException e) {
+            success = false;
+            e.printStackTrace();
+        }
+        out.writeBoolean(success);
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = collector.getDiagnostics();
+        out.writeInt(diagnostics.size());
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            JavaFileObject source = diagnostic.getSource();
+            out.writeUTF(diagnostic.getKind().name());
+            out.writeUTF(source instanceof MemoryFile ? ((MemoryFile) source).name : "");
+            out.writeLong(diagnostic.getLineNumber());
+            out.writeLong(diagnostic.getColumnNumber());
+            out.writeUTF(null == diagnostic.getCode() ? "" : diagnostic.getCode());
+            writeBytes(out, String.valueOf(diagnostic.getMessage(Locale.getDefault())).getBytes(StandardCharsets.UTF_8));
+        }
+        Map<String, byte[]> classBytes = success ? fileManager.classBytes() : Collections.emptyMap();
+        out.writeInt(classBytes.size());
+        for (Map.Entry<String, byte[]> entry : classBytes.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeBytes(out, entry.getValue());
+        }
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * 内存中的源码、输入class与输出class
+     */
+    static final class MemoryFile extends SimpleJavaFileObject {
+
+        private final String name;
+
+        private final String code;
+
+        private final byte[] bytes;
+
+        private ByteArrayOutputStream output;
+
+        private MemoryFile(String name, Kind kind, String code, byte[] bytes) {
+            super(URI.create("worker:///" + name.replace('.', '/') + kind.extension), kind);
+            this.name = name;
+            this.code = code;
+            this.bytes = bytes;
+        }
+
+        static MemoryFile source(String className, String code) {
+            return new MemoryFile(className, Kind.SOURCE, code, null);
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            output = new ByteArrayOutputStream();
+            return output;
+        }
+    }
+
+    /**
+     * 输出class保存在内存中，其他动态class追加到classpath
+     */
+    static final class WorkerFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        private final Map<String, byte[]> peers;
+
+        private final Map<String, MemoryFile> outputs = new LinkedHashMap<>();
+
+        WorkerFileManager(StandardJavaFileManager fileManager, Map<String, byte[]> peers) {
+            super(fileManager);
+            this.peers = peers;
+        }
+
+        Map<String, byte[]> classBytes() {
+            Map<String, byte[]> classBytes = new LinkedHashMap<>();
+            for (Map.Entry<String, MemoryFile> entry : outputs.entrySet()) {
+                if (null != entry.getValue().output) {
+                    classBytes.put(entry.getKey(), entry.getValue().output.toByteArray());
+                }
+            }
+            return classBytes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            MemoryFile file = new MemoryFile(className, kind, null, null);
+            outputs.put(className, file);
+            return file;
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+            Iterable<JavaFileObject> list = super.list(location, packageName, kinds, recurse);
+            if (peers.isEmpty() || StandardLocation.CLASS_PATH != location || !kinds.contains(JavaFileObject.Kind.CLASS)) {
+                return list;
+            }
+            List<JavaFileObject> result = new ArrayList<>();
+            list.forEach(result::add);
+            for (Map.Entry<String, byte[]> entry : peers.entrySet()) {
+                String name = entry.getKey();
+                int index = name.lastIndexOf('.');
+                String peerPackage = index < 0 ? "" : name.substring(0, index);
+                if (peerPackage.equals(packageName) || (recurse && peerPackage.startsWith(packageName + "."))) {
+                    result.add(new MemoryFile(name, JavaFileObject.Kind.CLASS, null, entry.getValue()));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file) {
+            if (file instanceof MemoryFile) {
+                return ((MemoryFile) file).name;
+            }
+            return super.inferBinaryName(location, file);
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            if (a instanceof MemoryFile || b instanceof MemoryFile) {
+                return a.toUri().equals(b.toUri());
+            }
+            return super.isSameFile(a, b);
+        }
+    }
+}
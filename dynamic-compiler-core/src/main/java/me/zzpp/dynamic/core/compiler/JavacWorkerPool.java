@@ -0,0 +1,338 @@
+package me.zzpp.dynamic.core.compiler;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zzpp.dynamic.core.utils.ContentDigest;
+
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 常驻javac工作进程池，编译在独立的jvm中进行，javac的内存占用与宿主堆隔离，进程复用避免每次编译的jvm启动与javac预热。
+ * 借出前对空闲过久的进程做健康检查，编译次数达到上限后回收；编译超时或调用线程被中断时结束对应进程
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class JavacWorkerPool implements Closeable {
+
+    private static final List<String> DEFAULT_JVM_OPTIONS = Collections.unmodifiableList(Arrays.asList("-XX:+UseSerialGC", "-Xss4m"));
+
+    private static final List<String> OPTIONS = Collections.unmodifiableList(Arrays.asList("-encoding", "utf-8"));
+
+    /**
+     * 工作进程入口的class，代码来源不是本地目录或jar时复制到临时目录
+     */
+    private static final String[] WORKER_CLASSES = {"JavacWorkerMain", "JavacWorkerMain$MemoryFile", "JavacWorkerMain$WorkerFileManager"};
+
+    private static final List<String> HOST_CLASS_PATH = Collections.unmodifiableList(Arrays.stream(System.getProperty("java.class.path", "").split(File.pathSeparator))
+            .filter(path -> !path.isEmpty()).collect(Collectors.toList()));
+
+    private static final String WARMUP_CLASS = "JavacWorkerWarmup";
+
+    private final String javaPath;
+
+    private final List<String> jvmOptions;
+
+    private final int maxCompiles;
+
+    private final long timeoutMillis;
+
+    /**
+     * 空闲超过该时间的进程借出前先ping
+     */
+    private final long idleCheckMillis = TimeUnit.SECONDS.toMillis(30);
+
+    private final Semaphore permits;
+
+    private final Deque<JavacWorker> idle = new ConcurrentLinkedDeque<>();
+
+    private final Set<JavacWorker> workers = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService watchdog;
+
+    private final AtomicInteger index = new AtomicInteger();
+
+    private volatile String workerClassPath;
+
+    private volatile boolean closed;
+
+    /**
+     * @param javaPath      java命令或所在目录，为空时使用当前jvm的java
+     * @param maxWorkers    最大进程数，同时进行的编译超过时等待
+     * @param maxCompiles   每个进程最多编译次数，达到后回收，限制javac缓存的增长
+     * @param timeoutMillis 单次编译超时时间，超时后结束进程，小于等于0不超时
+     * @param jvmOptions    工作进程的jvm参数，为空时使用-XX:+UseSerialGC -Xss4m
+     */
+    public JavacWorkerPool(String javaPath, int maxWorkers, int maxCompiles, long timeoutMillis, List<String> jvmOptions) {
+        this.javaPath = java(javaPath);
+        this.permits = new Semaphore(Math.max(1, maxWorkers));
+        this.maxCompiles = maxCompiles;
+        this.timeoutMillis = timeoutMillis;
+        this.jvmOptions = null == jvmOptions ? DEFAULT_JVM_OPTIONS : new ArrayList<>(jvmOptions);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "javac-worker-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 默认：进程数为cpu核数的一半，每个进程编译500次后回收，超时60秒
+     *
+     * @param javaPath java命令或所在目录，为空时使用当前jvm的java
+     */
+    public JavacWorkerPool(String javaPath) {
+        this(javaPath, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 500, TimeUnit.SECONDS.toMillis(60), null);
+    }
+
+    public JavacWorkerPool() {
+        this(null);
+    }
+
+    /**
+     * 预先启动工作进程并编译一次，首次编译不再等待jvm启动与javac加载
+     *
+     * @param count 进程数，不超过最大进程数
+     */
+    public void prestart(int count) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < count && permits.tryAcquire(); i++) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                JavacWorker worker = null;
+                boolean ok = false;
+                try {
+                    worker = spawn();
+                    ok = null != worker.compile(Collections.emptyList(), ContentDigest.of(Collections.<String>emptyList()), OPTIONS, Collections.emptyMap(),
+                            Collections.singletonList(new MemoryJavaFileObject(WARMUP_CLASS, "public class " + WARMUP_CLASS + " {}")), null);
+                } catch (IOException e) {
+                    log.warn("javac worker prestart failed, {}", e.getMessage());
+                } finally {
+                    release(worker, ok);
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * 在工作进程中编译
+     *
+     * @param classPaths  classpath，需要是本地目录或jar，为空时与进程内编译一致使用宿主的java.class.path
+     * @param peers       其他动态class的字节码，追加到classpath
+     * @param sources     源码
+     * @param diagnostics 诊断信息监听，可为空
+     * @return 字节码（包含内部类），编译失败返回null
+     * @throws IOException          进程启动失败、异常退出或编译超时
+     * @throws InterruptedException 等待进程或编译时被中断
+     */
+    public Map<String, byte[]> compile(List<String> classPaths, Map<String, byte[]> peers, List<MemoryJavaFileObject> sources,
+                                       DiagnosticListener<? super JavaFileObject> diagnostics) throws IOException, InterruptedException {
+        if (classPaths.isEmpty()) {
+            classPaths = HOST_CLASS_PATH;
+        }
+        //工作进程按classpath缓存file manager，jar或目录内容变化后摘要不同，进程会重新打开
+        String fingerprint = ContentDigest.of(classPaths);
+        try {
+            return compileOnce(classPaths, fingerprint, peers, sources, diagnostics);
+        } catch (WorkerLostException e) {
+            //进程意外退出时换一个进程重试一次
+            log.warn("javac worker lost, retry, {}", e.getMessage());
+            return compileOnce(classPaths, fingerprint, peers, sources, diagnostics);
+        }
+    }
+
+    private Map<String, byte[]> compileOnce(List<String> classPaths, String fingerprint, Map<String, byte[]> peers, List<MemoryJavaFileObject> sources,
+                                            DiagnosticListener<? super JavaFileObject> diagnostics) throws IOException, InterruptedException {
+        JavacWorker worker = borrow();
+        Thread caller = Thread.currentThread();
+        long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+        ScheduledFuture<?> guard = watchdog.scheduleWithFixedDelay(() -> {
+            if (caller.isInterrupted() || System.currentTimeMillis() > deadline) {
+                worker.destroy();
+            }
+        }, 100, 100, TimeUnit.MILLISECONDS);
+        boolean ok = false;
+        try {
+            Map<String, byte[]> classBytes = worker.compile(classPaths, fingerprint, OPTIONS, peers, sources, diagnostics);
+            ok = true;
+            return classBytes;
+        } catch (IOException e) {
+            if (caller.isInterrupted()) {
+                throw new InterruptedException("javac worker compile interrupted");
+            } else if (System.currentTimeMillis() > deadline) {
+                throw new IOException("javac worker compile timeout " + timeoutMillis + "ms", e);
+            }
+            throw new WorkerLostException(worker + " " + e.getMessage(), e);
+        } finally {
+            guard.cancel(false);
+            release(worker, ok);
+        }
+    }
+
+    /**
+     * @return 当前存活的进程数
+     */
+    public int size() {
+        return workers.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        watchdog.shutdownNow();
+        for (JavacWorker worker : workers) {
+            worker.close();
+        }
+        workers.clear();
+        idle.clear();
+    }
+
+    private JavacWorker borrow() throws IOException, InterruptedException {
+        if (closed) {
+            throw new IOException("javac worker pool closed");
+        }
+        permits.acquire();
+        try {
+            JavacWorker worker;
+            while (null != (worker = idle.pollFirst())) {
+                if (worker.isAlive() && (System.currentTimeMillis() - worker.getLastUsed() < idleCheckMillis || worker.ping())) {
+                    return worker;
+                }
+                retire(worker);
+            }
+            return spawn();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 归还进程，编译异常、达到编译次数上限或池已关闭时回收
+     */
+    private void release(JavacWorker worker, boolean ok) {
+        if (null != worker) {
+            if (ok && !closed && worker.isAlive() && worker.getCompiles() < maxCompiles) {
+                idle.offerFirst(worker);
+            } else {
+                retire(worker);
+            }
+        }
+        permits.release();
+    }
+
+    private void retire(JavacWorker worker) {
+        workers.remove(worker);
+        worker.close();
+        log.debug("{} retired, compiles:{}", worker, worker.getCompiles());
+    }
+
+    private JavacWorker spawn() throws IOException {
+        long start = System.currentTimeMillis();
+        List<String> command = new ArrayList<>();
+        command.add(javaPath);
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(workerClassPath());
+        command.add(JavacWorkerMain.class.getName());
+        JavacWorker worker = new JavacWorker(index.incrementAndGet(), command);
+        workers.add(worker);
+        if (closed) {
+            retire(worker);
+            throw new IOException("javac worker pool closed");
+        }
+        log.info("{} started, time consuming:{}ms", worker, System.currentTimeMillis() - start);
+        return worker;
+    }
+
+    /**
+     * 工作进程的classpath：入口class所在的本地目录或jar，否则（如spring boot嵌套jar）复制到临时目录
+     */
+    private String workerClassPath() throws IOException {
+        String classPath = this.workerClassPath;
+        if (null != classPath) {
+            return classPath;
+        }
+        synchronized (this) {
+            if (null != this.workerClassPath) {
+                return this.workerClassPath;
+            }
+            CodeSource codeSource = JavacWorkerMain.class.getProtectionDomain().getCodeSource();
+            URL location = null == codeSource ? null : codeSource.getLocation();
+            if (null != location && "file".equals(location.getProtocol())) {
+                try {
+                    File file = Paths.get(location.toURI()).toFile();
+                    if (file.exists()) {
+                        classPath = file.getAbsolutePath();
+                    }
+                } catch (URISyntaxException | RuntimeException ignored) {
+                }
+            }
+            if (null == classPath) {
+                classPath = extractWorkerClasses().getAbsolutePath();
+            }
+            this.workerClassPath = classPath;
+            return classPath;
+        }
+    }
+
+    private static File extractWorkerClasses() throws IOException {
+        File dir = Files.createTempDirectory("java-dynamic-worker").toFile();
+        String packagePath = JavacWorkerMain.class.getPackage().getName().replace('.', '/');
+        File packageDir = new File(dir, packagePath);
+        if (!packageDir.mkdirs()) {
+            throw new IOException("create dir failed:" + packageDir);
+        }
+        for (String name : WORKER_CLASSES) {
+            try (InputStream in = JavacWorkerMain.class.getResourceAsStream(name + ".class")) {
+                if (null == in) {
+                    throw new FileNotFoundException(packagePath + "/" + name + ".class");
+                }
+                Files.copy(in, new File(packageDir, name + ".class").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static String java(String javaPath) {
+        File bin;
+        if (null == javaPath || javaPath.isEmpty()) {
+            bin = new File(System.getProperty("java.home"), "bin");
+        } else {
+            File file = new File(javaPath);
+            if (!file.isDirectory()) {
+                return file.getAbsolutePath();
+            }
+            bin = file;
+        }
+        File java = new File(bin, "java");
+        if (!java.isFile()) {
+            java = new File(bin, "java.exe");
+        }
+        return java.getAbsolutePath();
+    }
+
+    /**
+     * 编译过程中进程意外退出
+     */
+    private static final class WorkerLostException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private WorkerLostException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
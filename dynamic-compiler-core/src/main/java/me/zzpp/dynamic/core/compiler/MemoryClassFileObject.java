@@ -0,0 +1,44 @@
+package me.zzpp.dynamic.core.compiler;
+
+import javax.tools.SimpleJavaFileObject;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * 内存中的class字节码，javac输出的目标
+ *
+ * @author zzpp
+ */
+public class MemoryClassFileObject extends SimpleJavaFileObject {
+
+    private final String className;
+
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+    /**
+     * @param className 全限定类名（binary name）
+     */
+    public MemoryClassFileObject(String className) {
+        super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+        this.className = className;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public OutputStream openOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * 获取编译后的字节码
+     *
+     * @return 字节码
+     */
+    public byte[] getBytes() {
+        return outputStream.toByteArray();
+    }
+}
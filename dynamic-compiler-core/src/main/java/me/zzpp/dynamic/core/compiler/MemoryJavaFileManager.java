@@ -0,0 +1,51 @@
+package me.zzpp.dynamic.core.compiler;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内存文件管理器，编译输出的class不落盘，直接保存在内存中。
+ * 只包装一次编译，关闭时不会关闭被包装的（池化的）文件管理器
+ *
+ * @author zzpp
+ */
+public class MemoryJavaFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+    private final Map<String, MemoryClassFileObject> classFileObjects = new LinkedHashMap<>();
+
+    public MemoryJavaFileManager(JavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+        if (StandardLocation.CLASS_OUTPUT == location && JavaFileObject.Kind.CLASS == kind) {
+            MemoryClassFileObject fileObject = new MemoryClassFileObject(className);
+            classFileObjects.put(className, fileObject);
+            return fileObject;
+        }
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * 获取本次编译输出的全部字节码（包含内部类）
+     *
+     * @return key:全限定类名 value:字节码
+     */
+    public Map<String, byte[]> getClassBytes() {
+        Map<String, byte[]> classBytes = new LinkedHashMap<>();
+        classFileObjects.forEach((name, fileObject) -> classBytes.put(name, fileObject.getBytes()));
+        return classBytes;
+    }
+}
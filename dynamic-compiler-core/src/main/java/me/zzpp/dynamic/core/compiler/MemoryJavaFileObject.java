@@ -0,0 +1,35 @@
+package me.zzpp.dynamic.core.compiler;
+
+import javax.tools.SimpleJavaFileObject;
+import java.net.URI;
+
+/**
+ * 内存中的java源码
+ *
+ * @author zzpp
+ */
+public class MemoryJavaFileObject extends SimpleJavaFileObject {
+
+    private final String className;
+
+    private final String javaCode;
+
+    /**
+     * @param className 全限定类名
+     * @param javaCode  java源码
+     */
+    public MemoryJavaFileObject(String className, String javaCode) {
+        super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+        this.className = className;
+        this.javaCode = javaCode;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+        return javaCode;
+    }
+}
@@ -0,0 +1,96 @@
+package me.zzpp.dynamic.core.compiler;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 将其他动态class的字节码追加到classpath，使源码可以引用已加载的动态class。
+ * 只包装一次编译，关闭时不会关闭被包装的文件管理器
+ *
+ * @author zzpp
+ */
+public class PeerJavaFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+    /**
+     * key:全限定类名 value:字节码
+     */
+    private final Map<String, byte[]> peers;
+
+    public PeerJavaFileManager(JavaFileManager fileManager, Map<String, byte[]> peers) {
+        super(fileManager);
+        this.peers = peers;
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        Iterable<JavaFileObject> list = super.list(location, packageName, kinds, recurse);
+        if (StandardLocation.CLASS_PATH != location || !kinds.contains(JavaFileObject.Kind.CLASS)) {
+            return list;
+        }
+        List<JavaFileObject> result = null;
+        for (Map.Entry<String, byte[]> entry : peers.entrySet()) {
+            String name = entry.getKey();
+            int index = name.lastIndexOf('.');
+            String peerPackage = index < 0 ? "" : name.substring(0, index);
+            if (peerPackage.equals(packageName) || (recurse && peerPackage.startsWith(packageName + "."))) {
+                if (null == result) {
+                    result = new ArrayList<>();
+                    list.forEach(result::add);
+                }
+                result.add(new PeerClassFileObject(name, entry.getValue()));
+            }
+        }
+        return null == result ? list : result;
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof PeerClassFileObject) {
+            return ((PeerClassFileObject) file).className;
+        }
+        return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean isSameFile(FileObject a, FileObject b) {
+        if (a instanceof PeerClassFileObject || b instanceof PeerClassFileObject) {
+            return a.toUri().equals(b.toUri());
+        }
+        return super.isSameFile(a, b);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private static final class PeerClassFileObject extends SimpleJavaFileObject {
+
+        private final String className;
+
+        private final byte[] bytes;
+
+        private PeerClassFileObject(String className, byte[] bytes) {
+            super(URI.create("peer:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.className = className;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package me.zzpp.dynamic.core.compiler;
+
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 池化的文件管理器，由{@link JavaFileManagerPool}创建并复用。
+ * 已打开的jar由底层{@link StandardJavaFileManager}持有，包列表在此缓存，classpath变化后整体失效
+ *
+ * @author zzpp
+ */
+public class PooledJavaFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    /**
+     * 所属的classpath key
+     */
+    final String key;
+
+    /**
+     * classpath指纹，jar的修改时间变化后失效
+     */
+    final String fingerprint;
+
+    /**
+     * 是否缓存classpath的包列表，classpath为空时会使用宿主的java.class.path，不做缓存
+     */
+    private final boolean cacheClassPath;
+
+    private final Map<ListKey, List<JavaFileObject>> listCache = new ConcurrentHashMap<>();
+
+    PooledJavaFileManager(StandardJavaFileManager fileManager, String key, String fingerprint, boolean cacheClassPath) {
+        super(fileManager);
+        this.key = key;
+        this.fingerprint = fingerprint;
+        this.cacheClassPath = cacheClassPath;
+    }
+
+    /**
+     * 获取底层的标准文件管理器
+     *
+     * @return StandardJavaFileManager
+     */
+    public StandardJavaFileManager getStandardFileManager() {
+        return fileManager;
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        boolean cacheable = StandardLocation.PLATFORM_CLASS_PATH == location
+                || (cacheClassPath && StandardLocation.CLASS_PATH == location);
+        if (!cacheable) {
+            return super.list(location, packageName, kinds, recurse);
+        }
+        ListKey listKey = new ListKey(location, packageName, kinds, recurse);
+        List<JavaFileObject> fileObjects = listCache.get(listKey);
+        if (null == fileObjects) {
+            fileObjects = new ArrayList<>();
+            for (JavaFileObject fileObject : super.list(location, packageName, kinds, recurse)) {
+                fileObjects.add(fileObject);
+            }
+            listCache.put(listKey, fileObjects);
+        }
+        return fileObjects;
+    }
+
+    private static final class ListKey {
+
+        private final Location location;
+
+        private final String packageName;
+
+        private final Set<JavaFileObject.Kind> kinds;
+
+        private final boolean recurse;
+
+        private ListKey(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) {
+            this.location = location;
+            this.packageName = packageName;
+            this.kinds = kinds;
+            this.recurse = recurse;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ListKey)) {
+                return false;
+            }
+            ListKey listKey = (ListKey) o;
+            return recurse == listKey.recurse && location.equals(listKey.location)
+                    && packageName.equals(listKey.packageName) && kinds.equals(listKey.kinds);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(location, packageName, kinds, recurse);
+        }
+    }
+}
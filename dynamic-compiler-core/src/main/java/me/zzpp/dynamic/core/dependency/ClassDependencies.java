@@ -0,0 +1,127 @@
+package me.zzpp.dynamic.core.dependency;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 从字节码常量池中读取引用的class。
+ * 包括CONSTANT_Class，以及方法/字段描述符与泛型签名中出现的类型
+ *
+ * @author zzpp
+ */
+public final class ClassDependencies {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /**
+     * 描述符与签名中类型之前可能出现的字符
+     */
+    private static final String DESCRIPTOR_BOUNDARY = "();[<>+-*:^";
+
+    private ClassDependencies() {
+    }
+
+    /**
+     * 读取引用的class
+     *
+     * @param classBytes 字节码
+     * @return 全限定类名（binary name），包含自身
+     */
+    public static Set<String> referencedClasses(byte[] classBytes) {
+        Set<String> classes = new HashSet<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(classBytes))) {
+            if (MAGIC != in.readInt()) {
+                throw new IllegalArgumentException("not a class file");
+            }
+            //minor_version, major_version
+            in.readInt();
+            int count = in.readUnsignedShort();
+            String[] utf8 = new String[count];
+            int[] classIndexes = new int[count];
+            int classes0 = 0;
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1:
+                        utf8[i] = in.readUTF();
+                        break;
+                    case 7:
+                        classIndexes[classes0++] = in.readUnsignedShort();
+                        break;
+                    case 8:
+                    case 16:
+                    case 19:
+                    case 20:
+                        in.skipBytes(2);
+                        break;
+                    case 15:
+                        in.skipBytes(3);
+                        break;
+                    case 3:
+                    case 4:
+                    case 9:
+                    case 10:
+                    case 11:
+                    case 12:
+                    case 17:
+                    case 18:
+                        in.skipBytes(4);
+                        break;
+                    case 5:
+                    case 6:
+                        //long、double占用两个常量池位置
+                        in.skipBytes(8);
+                        i++;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown constant pool tag " + tag);
+                }
+            }
+            for (int i = 0; i < classes0; i++) {
+                String name = utf8[classIndexes[i]];
+                if (null != name && name.charAt(0) != '[') {
+                    classes.add(name.replace('/', '.'));
+                }
+            }
+            //描述符与签名，只会与已知的动态class比对，误匹配的字符串常量无影响
+            for (String value : utf8) {
+                if (null != value) {
+                    descriptorTypes(value, classes);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid class file", e);
+        }
+        return classes;
+    }
+
+    private static void descriptorTypes(String value, Set<String> classes) {
+        int index = value.indexOf('L');
+        while (index >= 0) {
+            int next = index + 1;
+            //只匹配描述符中类型的起始位置
+            if (0 == index || DESCRIPTOR_BOUNDARY.indexOf(value.charAt(index - 1)) >= 0) {
+                int end = index + 1;
+                while (end < value.length()) {
+                    char c = value.charAt(end);
+                    if (';' == c || '<' == c) {
+                        break;
+                    }
+                    if (!Character.isJavaIdentifierPart(c) && '/' != c) {
+                        end = -1;
+                        break;
+                    }
+                    end++;
+                }
+                if (end > index + 1 && end < value.length()) {
+                    classes.add(value.substring(index + 1, end).replace('/', '.'));
+                    next = end;
+                }
+            }
+            index = value.indexOf('L', next);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package me.zzpp.dynamic.core.dependency;
+
+import java.util.*;
+
+/**
+ * 动态class之间的依赖关系，节点为className
+ *
+ * @author zzpp
+ */
+public class DependencyGraph {
+
+    /**
+     * key依赖的class
+     */
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+
+    /**
+     * 依赖key的class
+     */
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+
+    /**
+     * 更新节点的依赖
+     *
+     * @param node         className
+     * @param dependencies 依赖的className，不包含自身
+     */
+    public synchronized void update(String node, Set<String> dependencies) {
+        remove(node);
+        Set<String> copy = new HashSet<>(dependencies);
+        copy.remove(node);
+        this.dependencies.put(node, copy);
+        for (String dependency : copy) {
+            this.dependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(node);
+        }
+    }
+
+    /**
+     * 删除节点的依赖，依赖该节点的关系保留
+     *
+     * @param node className
+     */
+    public synchronized void remove(String node) {
+        Set<String> old = dependencies.remove(node);
+        if (null != old) {
+            for (String dependency : old) {
+                Set<String> set = dependents.get(dependency);
+                if (null != set) {
+                    set.remove(node);
+                    if (set.isEmpty()) {
+                        dependents.remove(dependency);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 直接或间接依赖指定节点的全部节点
+     *
+     * @param nodes className
+     * @return 依赖方，不包含nodes本身
+     */
+    public synchronized Set<String> dependents(Collection<String> nodes) {
+        Set<String> result = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>(nodes);
+        while (!queue.isEmpty()) {
+            for (String dependent : dependents.getOrDefault(queue.poll(), Collections.emptySet())) {
+                if (!nodes.contains(dependent) && result.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按依赖关系排序，被依赖的节点在前。
+     * 存在循环依赖时，循环中的节点作为一组返回，需要在同一个编译任务中编译
+     *
+     * @param nodes className
+     * @return 编译顺序，每组在一个编译任务中完成
+     */
+    public synchronized List<List<String>> order(Collection<String> nodes) {
+        Map<String, Integer> inDegree = new TreeMap<>();
+        for (String node : nodes) {
+            int degree = 0;
+            for (String dependency : dependencies.getOrDefault(node, Collections.emptySet())) {
+                if (nodes.contains(dependency)) {
+                    degree++;
+                }
+            }
+            inDegree.put(node, degree);
+        }
+        List<List<String>> order = new ArrayList<>();
+        while (!inDegree.isEmpty()) {
+            List<String> ready = new ArrayList<>();
+            inDegree.forEach((node, degree) -> {
+                if (0 == degree) {
+                    ready.add(node);
+                }
+            });
+            if (ready.isEmpty()) {
+                //剩余节点存在循环依赖
+                order.add(new ArrayList<>(inDegree.keySet()));
+                break;
+            }
+            for (String node : ready) {
+                inDegree.remove(node);
+                order.add(Collections.singletonList(node));
+                for (String dependent : dependents.getOrDefault(node, Collections.emptySet())) {
+                    inDegree.computeIfPresent(dependent, (k, degree) -> degree - 1);
+                }
+            }
+        }
+        return order;
+    }
+}
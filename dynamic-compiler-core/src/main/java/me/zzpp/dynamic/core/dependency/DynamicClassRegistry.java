@@ -0,0 +1,222 @@
+package me.zzpp.dynamic.core.dependency;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 当前已加载的动态class及其依赖关系。
+ * 编译时作为classpath提供其他动态class的字节码，运行时为{@link me.zzpp.dynamic.core.DynamicClassLoader}解析其他动态class
+ *
+ * @author zzpp
+ */
+public class DynamicClassRegistry {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 全限定类名（包含内部类） -> className
+     */
+    private final Map<String, String> owners = new ConcurrentHashMap<>();
+
+    private final DependencyGraph graph = new DependencyGraph();
+
+    /**
+     * 登记新加载的class，并根据字节码更新依赖关系。同一批次的class一起登记，批次内部的依赖也会被记录
+     *
+     * @param units   编译单元
+     * @param classes 加载后的class，key:className
+     */
+    public synchronized void register(Collection<DynamicUnit> units, Map<String, Class<?>> classes) {
+        for (DynamicUnit unit : units) {
+            unregister(unit.getClassName());
+            unit.getClassBytes().keySet().forEach(name -> owners.put(name, unit.getClassName()));
+            entries.put(unit.getClassName(), new Entry(unit, classes.get(unit.getClassName()), digests(unit.getClassBytes())));
+        }
+        for (DynamicUnit unit : units) {
+            Set<String> dependencies = new HashSet<>();
+            for (byte[] bytes : unit.getClassBytes().values()) {
+                for (String name : ClassDependencies.referencedClasses(bytes)) {
+                    String owner = owners.get(name);
+                    if (null != owner) {
+                        dependencies.add(owner);
+                    }
+                }
+            }
+            graph.update(unit.getClassName(), dependencies);
+        }
+    }
+
+    /**
+     * 移除class，依赖它的class保留依赖关系
+     *
+     * @param className className
+     */
+    public synchronized void unregister(String className) {
+        Entry old = entries.remove(className);
+        if (null != old) {
+            old.unit.getClassBytes().keySet().forEach(name -> owners.remove(name, className));
+            graph.remove(className);
+        }
+    }
+
+    /**
+     * 获取编译单元
+     *
+     * @param className className
+     * @return 编译单元，不存在时为null
+     */
+    public DynamicUnit unit(String className) {
+        Entry entry = entries.get(className);
+        return null == entry ? null : entry.unit;
+    }
+
+    /**
+     * 直接或间接依赖指定class的全部class
+     *
+     * @param classNames className
+     * @return 依赖方，不包含classNames本身
+     */
+    public Set<String> dependents(Collection<String> classNames) {
+        return graph.dependents(classNames);
+    }
+
+    /**
+     * 重新编译的顺序，被依赖的class在前，循环依赖的class为一组
+     *
+     * @param classNames className
+     * @return 编译顺序
+     */
+    public List<List<String>> order(Collection<String> classNames) {
+        return graph.order(classNames);
+    }
+
+    /**
+     * 其他动态class的字节码，作为编译classpath
+     *
+     * @param excludes 排除的className，通常为正在编译的class
+     * @return key:全限定类名 value:字节码
+     */
+    public Map<String, byte[]> peerBytes(Collection<String> excludes) {
+        Map<String, byte[]> peers = new HashMap<>();
+        entries.forEach((className, entry) -> {
+            if (!excludes.contains(className)) {
+                peers.putAll(entry.unit.getClassBytes());
+            }
+        });
+        return peers;
+    }
+
+    /**
+     * 字节码引用的、当前已加载的其他动态class的摘要，用于校验编译结果缓存。
+     * 只包含实际引用的class，无关class的重新加载与加载顺序不影响结果
+     *
+     * @param classBytes 字节码
+     * @param excludes   排除的className，通常为正在编译的class
+     * @return key:全限定类名 value:字节码摘要
+     */
+    public Map<String, String> peerDigests(Map<String, byte[]> classBytes, Collection<String> excludes) {
+        Map<String, String> digests = new TreeMap<>();
+        for (String name : referencedPeers(classBytes)) {
+            String owner = owners.get(name);
+            Entry entry = null == owner || excludes.contains(owner) ? null : entries.get(owner);
+            String digest = null == entry ? null : entry.digests.get(name);
+            if (null != digest) {
+                digests.put(name, digest);
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * 字节码引用的其他动态class的摘要，按编译时使用的字节码计算
+     *
+     * @param classBytes 字节码
+     * @param peers      编译时作为classpath的其他动态class的字节码
+     * @return key:全限定类名 value:字节码摘要
+     */
+    public static Map<String, String> referencedDigests(Map<String, byte[]> classBytes, Map<String, byte[]> peers) {
+        Map<String, String> digests = new TreeMap<>();
+        for (String name : referencedPeers(classBytes)) {
+            byte[] bytes = peers.get(name);
+            if (null != bytes) {
+                digests.put(name, digest(bytes));
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * 引用的class，不包含自身（含内部类）
+     */
+    private static Set<String> referencedPeers(Map<String, byte[]> classBytes) {
+        Set<String> names = new HashSet<>();
+        for (byte[] bytes : classBytes.values()) {
+            names.addAll(ClassDependencies.referencedClasses(bytes));
+        }
+        names.removeAll(classBytes.keySet());
+        return names;
+    }
+
+    /**
+     * 运行时解析其他动态class
+     *
+     * @param name 全限定类名
+     * @return class，不是动态class时为null
+     */
+    public Class<?> peerClass(String name) {
+        String owner = owners.get(name);
+        Entry entry = null == owner ? null : entries.get(owner);
+        if (null == entry) {
+            return null;
+        }
+        if (name.equals(entry.unit.getQualifiedName())) {
+            return entry.clz;
+        }
+        try {
+            //内部类由同一个loader加载
+            return Class.forName(name, false, entry.clz.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> digests(Map<String, byte[]> classBytes) {
+        Map<String, String> digests = new HashMap<>();
+        classBytes.forEach((name, bytes) -> digests.put(name, digest(bytes)));
+        return digests;
+    }
+
+    private static String digest(byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes);
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest.digest()) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+
+        private final DynamicUnit unit;
+
+        private final Class<?> clz;
+
+        /**
+         * 每个class（含内部类）的字节码摘要，key:全限定类名
+         */
+        private final Map<String, String> digests;
+
+        private Entry(DynamicUnit unit, Class<?> clz, Map<String, String> digests) {
+            this.unit = unit;
+            this.clz = clz;
+            this.digests = digests;
+        }
+    }
+}
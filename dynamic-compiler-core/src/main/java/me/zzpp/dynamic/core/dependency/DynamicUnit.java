@@ -0,0 +1,36 @@
+package me.zzpp.dynamic.core.dependency;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 一个动态class的编译单元
+ *
+ * @author zzpp
+ */
+@Data
+@AllArgsConstructor
+public class DynamicUnit {
+
+    /**
+     * className
+     */
+    private final String className;
+
+    /**
+     * 全限定类名
+     */
+    private final String qualifiedName;
+
+    /**
+     * 替换类名后的java源码，依赖变化时用于重新编译
+     */
+    private final String javaCode;
+
+    /**
+     * 编译后的字节码（包含内部类），key:全限定类名
+     */
+    private final Map<String, byte[]> classBytes;
+}
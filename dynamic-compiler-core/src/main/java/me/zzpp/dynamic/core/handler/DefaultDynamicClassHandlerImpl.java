@@ -1,31 +1,69 @@
 package me.zzpp.dynamic.core.handler;
 
+import com.sun.source.util.JavacTask;
 import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import me.zzpp.dynamic.core.ClassPathIndex;
 import me.zzpp.dynamic.core.DynamicClassLoader;
+import me.zzpp.dynamic.core.NamespaceClassLoader;
+import me.zzpp.dynamic.core.cache.ByteCodeCache;
+import me.zzpp.dynamic.core.compiler.BatchCompileResult;
+import me.zzpp.dynamic.core.compiler.CompilationResult;
+import me.zzpp.dynamic.core.compiler.CompileDiagnostic;
+import me.zzpp.dynamic.core.compiler.CompileExecutor;
+import me.zzpp.dynamic.core.compiler.CompileInterrupter;
+import me.zzpp.dynamic.core.compiler.DynamicCompileException;
+import me.zzpp.dynamic.core.compiler.ClassPathJavaFileManager;
+import me.zzpp.dynamic.core.compiler.CompileClassPath;
+import me.zzpp.dynamic.core.compiler.HostClassPath;
+import me.zzpp.dynamic.core.compiler.JavaFileManagerPool;
+import me.zzpp.dynamic.core.compiler.JavacWorkerPool;
+import me.zzpp.dynamic.core.compiler.MemoryJavaFileManager;
+import me.zzpp.dynamic.core.compiler.MemoryJavaFileObject;
+import me.zzpp.dynamic.core.compiler.PeerJavaFileManager;
+import me.zzpp.dynamic.core.dependency.DynamicClassRegistry;
+import me.zzpp.dynamic.core.dependency.DynamicUnit;
+import me.zzpp.dynamic.core.compiler.PooledJavaFileManager;
+import me.zzpp.dynamic.core.invoke.InstanceManager;
+import me.zzpp.dynamic.core.invoke.LambdaBinder;
+import me.zzpp.dynamic.core.invoke.MethodInvoker;
+import me.zzpp.dynamic.core.invoke.MethodInvokers;
+import me.zzpp.dynamic.core.lifecycle.LoaderLeak;
+import me.zzpp.dynamic.core.lifecycle.LoaderLeakDetector;
+import me.zzpp.dynamic.core.metrics.DynamicCompileListener;
+import me.zzpp.dynamic.core.metrics.DynamicCompileListener.Phase;
 import me.zzpp.dynamic.core.utils.CommandProcess;
+import me.zzpp.dynamic.core.utils.ContentDigest;
 import me.zzpp.dynamic.core.utils.DynamicClassUtils;
 import me.zzpp.dynamic.core.utils.FileUtils;
+import me.zzpp.dynamic.core.utils.JavaSourceScanner;
 import me.zzpp.dynamic.core.utils.Platform;
 import org.apache.commons.lang3.BooleanUtils;
-import org.apache.commons.lang3.reflect.MethodUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
-import javax.tools.ToolProvider;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * 动态编译实现接口实现
@@ -48,12 +86,111 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
     @Setter
     private File classLibFile;
 
+    /**
+     * spring boot可执行jar，设置后优先作为classpath
+     */
+    @Setter
+    private File classLibJar;
+
+    /**
+     * 是否以线程上下文classloader层级作为classpath
+     */
+    @Setter
+    private boolean hostClassPath;
+
     @Setter
     private String cmd;
 
+    /**
+     * 是否按classLibFile建立classpath索引，供动态class的classloader跳过父加载器中不存在的class
+     */
+    @Setter
+    private boolean classPathIndex;
+
+    /**
+     * 编译结果缓存，为空时不启用
+     */
+    @Setter
+    private ByteCodeCache byteCodeCache;
+
+    /**
+     * 异步编译线程池，未设置时首次异步编译创建默认线程池，并随handler关闭
+     */
+    private volatile CompileExecutor compileExecutor;
+
+    private boolean ownCompileExecutor;
+
+    /**
+     * javac工作进程池，Worker方式使用，未设置时首次编译创建默认进程池，并随handler关闭
+     */
+    private volatile JavacWorkerPool workerPool;
+
+    private boolean ownWorkerPool;
+
+    /**
+     * 非静态方法默认的实例作用域
+     */
+    @Setter
+    private InstanceScope instanceScope = InstanceScope.Prototype;
+
+    /**
+     * 按className单独设置的实例作用域
+     */
+    private final Map<String, InstanceScope> instanceScopes = new ConcurrentHashMap<>();
+
+    private final InstanceManager instanceManager = new InstanceManager(Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * 编译过程监听，为NOOP时不计时
+     */
+    private volatile DynamicCompileListener compileListener = DynamicCompileListener.NOOP;
+
     private final CompilerType compilerType;
 
-    private final Map<String, Class<?>> cacheClass = new ConcurrentHashMap<>();
+    /**
+     * class缓存，写时复制，一次重新加载涉及的多个class同时替换
+     */
+    private volatile Map<String, Class<?>> cacheClass = Collections.emptyMap();
+
+    /**
+     * 已加载的动态class及其依赖关系，重新加载时依赖方随之重新编译
+     */
+    private final DynamicClassRegistry registry = new DynamicClassRegistry();
+
+    /**
+     * class所属的命名空间，key:className
+     */
+    private final Map<String, String> classNamespaces = new ConcurrentHashMap<>();
+
+    /**
+     * 命名空间当前的loader与成员，key:命名空间
+     */
+    private final Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
+
+    /**
+     * classloader版本跟踪，class被替换或卸载1分钟后仍未被回收视为泄漏
+     */
+    private final LoaderLeakDetector leakDetector = new LoaderLeakDetector(TimeUnit.MINUTES.toMillis(1));
+
+    /**
+     * 按classpath复用的文件管理器，关闭handler时释放
+     */
+    private final JavaFileManagerPool fileManagerPool = new JavaFileManagerPool();
+
+    /**
+     * 编译锁分段数量
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * 按className分段的编译锁，只有同名class（或分段冲突）的重新加载才会互相等待
+     */
+    private final ReentrantLock[] compileLocks = new ReentrantLock[LOCK_STRIPES];
+
+    /**
+     * 编译中的任务，相同className与源码的并发请求合并为一次编译
+     */
+    private final Map<String, CompletableFuture<Class<?>>> compiling = new ConcurrentHashMap<>();
 
     public DefaultDynamicClassHandlerImpl() {
        this(CompilerType.Task,null);
@@ -66,6 +203,9 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
     public DefaultDynamicClassHandlerImpl(CompilerType compilerType, String cmdPath) {
         this.cmd = cmdPath;
         this.compilerType = compilerType;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            compileLocks[i] = new ReentrantLock();
+        }
         log.info("dynamic-class-handler uid:{} initialized successfully...",UUID_DIR);
     }
 
@@ -89,7 +229,9 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
 
     @Override
     public Class<?> loadClass(String className, String javaCode) {
-        if (null != this.classLibFile) {
+        if (null != this.classLibJar || hostClassPath) {
+            return loadClass(classPathCompiler(), className, javaCode);
+        } else if (null != this.classLibFile) {
             return loadClass(className, this.classLibFile, javaCode);
         } else if (null != this.classLibPaths) {
             return loadClass(className, this.classLibPaths, javaCode);
@@ -103,11 +245,15 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
     public Class<?> loadClass(String className, List<String> classLibPaths, String javaCode) {
         Compiler compiler;
         if (CompilerType.Javac == compilerType) {
-            compiler = new JavacCompiler();
+            compiler = new JavacCompiler(fileManagerPool);
         } else if (CompilerType.Task == compilerType) {
-            compiler = new ClassPathCompiler(classLibPaths);
+            compiler = new ClassPathCompiler(fileManagerPool, classLibPaths);
         } else if (CompilerType.Cmd == compilerType) {
             compiler = new CmdCompiler(cmd, classLibPaths);
+        } else if (CompilerType.Memory == compilerType) {
+            compiler = new MemoryCompiler(fileManagerPool, classLibPaths);
+        } else if (CompilerType.Worker == compilerType) {
+            compiler = new WorkerCompiler(fileManagerPool, workerPool(), classLibPaths);
         } else {
             throw new RuntimeException("不支持的类型");
         }
@@ -120,17 +266,355 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
     public Class<?> loadClass(String className, File cleasFile, String javaCode) {
         Compiler compiler;
         if (CompilerType.Javac == compilerType) {
-            compiler = new JavacCompiler();
+            compiler = new JavacCompiler(fileManagerPool);
         } else if (CompilerType.Task == compilerType) {
-            compiler = new ClassPathCompiler(cleasFile);
+            compiler = new ClassPathCompiler(fileManagerPool, cleasFile);
         } else if (CompilerType.Cmd == compilerType) {
             compiler = new CmdCompiler(cmd, cleasFile);
+        } else if (CompilerType.Memory == compilerType) {
+            compiler = new MemoryCompiler(fileManagerPool, cleasFile);
+        } else if (CompilerType.Worker == compilerType) {
+            compiler = new WorkerCompiler(fileManagerPool, workerPool(), cleasFile);
         } else {
             throw new RuntimeException("不支持的类型");
         }
         return loadClass(compiler, className, javaCode);
     }
 
+    @Override
+    public CompletableFuture<Class<?>> loadClassAsync(String javaCode) {
+        CompletableFuture<Class<?>> rejected = rejectMalformed(javaCode);
+        return null != rejected ? rejected : compileExecutor().submit(() -> loadClass(javaCode));
+    }
+
+    @Override
+    public CompletableFuture<Class<?>> loadClassAsync(String className, String javaCode) {
+        CompletableFuture<Class<?>> rejected = rejectMalformed(javaCode);
+        return null != rejected ? rejected : compileExecutor().submit(() -> loadClass(className, javaCode));
+    }
+
+    @Override
+    public CompletableFuture<Class<?>> loadClassAsync(String className, String javaCode, long timeout, TimeUnit unit) {
+        CompletableFuture<Class<?>> rejected = rejectMalformed(javaCode);
+        return null != rejected ? rejected : compileExecutor().submit(() -> loadClass(className, javaCode), timeout, unit);
+    }
+
+    /**
+     * 提交前检查语法
+     *
+     * @return 语法错误时返回失败的future，否则返回null
+     */
+    private CompletableFuture<Class<?>> rejectMalformed(String javaCode) {
+        CompilationResult result = validate(javaCode);
+        if (result.isSuccess()) {
+            return null;
+        }
+        CompletableFuture<Class<?>> future = new CompletableFuture<>();
+        future.completeExceptionally(new DynamicCompileException(String.format("动态编译失败，className %s ,path:validate", result.getClassName()), result));
+        return future;
+    }
+
+    @Override
+    public CompilationResult validate(String javaCode) {
+        return validate(javaCode, false);
+    }
+
+    @Override
+    @SneakyThrows
+    public CompilationResult validate(String javaCode, boolean attribute) {
+        long start = System.currentTimeMillis();
+        JavaSourceScanner.SourceInfo info = DynamicClassUtils.scan(javaCode);
+        String className;
+        String qualifiedName;
+        try {
+            className = DynamicClassUtils.getClassName(javaCode, info);
+            qualifiedName = DynamicClassUtils.getClassName(DynamicClassUtils.getPackageName(javaCode, info), className);
+        } catch (RuntimeException e) {
+            //无法识别类名时仍交给javac报告语法错误
+            className = qualifiedName = "Unknown";
+        }
+        MemoryCompiler compiler;
+        if (attribute) {
+            compiler = memoryCompiler();
+            if (isCache) {
+                compiler.peers = registry.peerBytes(Collections.singletonList(className));
+            }
+        } else {
+            //只解析不需要classpath
+            compiler = new MemoryCompiler(fileManagerPool, new ArrayList<>());
+        }
+        CompilationResult result = compiler.validate(new MemoryJavaFileObject(qualifiedName, javaCode), attribute);
+        log.debug("validate {} attribute:{} success:{} time consuming:{}ms", qualifiedName, attribute, result.isSuccess(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    @Override
+    public synchronized void setCompileExecutor(CompileExecutor compileExecutor) {
+        if (ownCompileExecutor && null != this.compileExecutor) {
+            this.compileExecutor.close();
+        }
+        this.compileExecutor = compileExecutor;
+        this.ownCompileExecutor = false;
+    }
+
+    @Override
+    public synchronized void setWorkerPool(JavacWorkerPool workerPool) {
+        if (ownWorkerPool && null != this.workerPool) {
+            this.workerPool.close();
+        }
+        this.workerPool = workerPool;
+        this.ownWorkerPool = false;
+    }
+
+    /**
+     * 默认进程池使用cmd所在目录的java，未设置cmd时使用当前jvm的java
+     */
+    private JavacWorkerPool workerPool() {
+        JavacWorkerPool pool = this.workerPool;
+        if (null == pool) {
+            synchronized (this) {
+                if (null == this.workerPool) {
+                    File javaDir = null == cmd || cmd.isEmpty() ? null : new File(cmd);
+                    if (null != javaDir && !javaDir.isDirectory()) {
+                        javaDir = javaDir.getAbsoluteFile().getParentFile();
+                    }
+                    this.workerPool = new JavacWorkerPool(null == javaDir ? null : javaDir.getAbsolutePath());
+                    this.ownWorkerPool = true;
+                }
+                pool = this.workerPool;
+            }
+        }
+        return pool;
+    }
+
+    private CompileExecutor compileExecutor() {
+        CompileExecutor executor = this.compileExecutor;
+        if (null == executor) {
+            synchronized (this) {
+                if (null == this.compileExecutor) {
+                    this.compileExecutor = new CompileExecutor();
+                    this.ownCompileExecutor = true;
+                }
+                executor = this.compileExecutor;
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    @SneakyThrows
+    public BatchCompileResult loadClasses(Map<String, String> sources) {
+        List<ReentrantLock> locks = lockAffected(sources.keySet());
+        try {
+            return doLoadClasses(sources);
+        } finally {
+            locks.forEach(ReentrantLock::unlock);
+        }
+    }
+
+    /**
+     * 锁定class及其依赖方，依赖方会随之重新编译。
+     * 按分段顺序加锁避免死锁，加锁期间依赖关系变化时重新加锁；等待时被中断则释放已持有的锁
+     *
+     * @param classNames className
+     * @return 已持有的锁
+     * @throws InterruptedException 等待锁时被中断
+     */
+    private List<ReentrantLock> lockAffected(Collection<String> classNames) throws InterruptedException {
+        while (true) {
+            TreeSet<Integer> stripes = stripes(classNames);
+            List<ReentrantLock> locks = new ArrayList<>(stripes.size());
+            try {
+                for (Integer stripe : stripes) {
+                    compileLocks[stripe].lockInterruptibly();
+                    locks.add(compileLocks[stripe]);
+                }
+            } catch (InterruptedException e) {
+                locks.forEach(ReentrantLock::unlock);
+                throw e;
+            }
+            if (stripes.containsAll(stripes(classNames))) {
+                return locks;
+            }
+            locks.forEach(ReentrantLock::unlock);
+        }
+    }
+
+    private TreeSet<Integer> stripes(Collection<String> classNames) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        (isCache ? affected(classNames) : classNames).forEach(className -> stripes.add(stripe(className)));
+        return stripes;
+    }
+
+    /**
+     * 重新加载可能涉及的class：依赖方，以及同一命名空间的成员（新一代loader中重新定义），逐层传递
+     *
+     * @param classNames className
+     * @return 包含classNames本身
+     */
+    private Set<String> affected(Collection<String> classNames) {
+        Set<String> affected = new LinkedHashSet<>(classNames);
+        Deque<String> queue = new ArrayDeque<>(classNames);
+        while (!queue.isEmpty()) {
+            String className = queue.poll();
+            Set<String> next = new HashSet<>(registry.dependents(Collections.singletonList(className)));
+            Namespace namespace = namespace(className);
+            if (null != namespace) {
+                next.addAll(namespace.members);
+            }
+            for (String name : next) {
+                if (affected.add(name)) {
+                    queue.add(name);
+                }
+            }
+        }
+        return affected;
+    }
+
+    private Namespace namespace(String className) {
+        String namespace = classNamespaces.get(className);
+        return null == namespace ? null : namespaces.get(namespace);
+    }
+
+    @SneakyThrows
+    private BatchCompileResult doLoadClasses(Map<String, String> sources) {
+        log.info("loadClasses，compile {} units,start", sources.size());
+        DynamicCompileListener listener = this.compileListener;
+        boolean timed = DynamicCompileListener.NOOP != listener;
+        String batchName = timed ? String.join(",", sources.keySet()) : null;
+        long start = timed ? System.nanoTime() : 0L;
+        //className -> 全限定类名
+        Map<String, String> classNames = new LinkedHashMap<>();
+        List<MemoryJavaFileObject> javaFileObjects = new ArrayList<>();
+        StringBuilder batchCode = new StringBuilder();
+        for (Map.Entry<String, String> entry : sources.entrySet()) {
+            String className = entry.getKey();
+            String javaCode = entry.getValue();
+            JavaSourceScanner.SourceInfo info = DynamicClassUtils.scan(javaCode);
+            if (!DynamicClassUtils.getClassName(javaCode, info).equals(className)) {
+                javaCode = DynamicClassUtils.replaceClassName(className, javaCode, info);
+            }
+            String newClassName = DynamicClassUtils.getClassName(DynamicClassUtils.getPackageName(javaCode, info), className);
+            classNames.put(className, newClassName);
+            javaFileObjects.add(new MemoryJavaFileObject(newClassName, javaCode));
+            batchCode.append(newClassName).append('\0').append(javaCode).append('\0');
+        }
+        if (timed) {
+            start = phase(listener, batchName, Phase.Parse, start);
+        }
+        MemoryCompiler compiler = memoryCompiler();
+        if (isCache) {
+            compiler.peers = registry.peerBytes(classNames.keySet());
+        }
+        BatchCompileResult result = new BatchCompileResult();
+        classNames.keySet().forEach(className -> result.getDiagnostics().put(className, new ArrayList<>()));
+        String cacheKey = null;
+        Map<String, byte[]> classBytes = null;
+        if (null != byteCodeCache) {
+            cacheKey = ByteCodeCache.key(batchCode.toString(), compiler.fingerprint());
+            classBytes = byteCodeCache.get(cacheKey, bytes -> isCache ? registry.peerDigests(bytes, classNames.keySet()) : Collections.emptyMap());
+            log.info("loadClasses，byte code cache {}", null == classBytes ? "miss" : "hit");
+            if (null == classBytes) {
+                classNames.keySet().forEach(listener::onCacheMiss);
+            } else {
+                classNames.keySet().forEach(listener::onCacheHit);
+            }
+        }
+        if (null == classBytes) {
+            DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+            if (timed) {
+                start = System.nanoTime();
+            }
+            try {
+                classBytes = compiler.compiler(javaFileObjects, collector);
+            } catch (Throwable e) {
+                listener.onCompileFailed(batchName, e);
+                throw e;
+            }
+            if (timed) {
+                start = phase(listener, batchName, Phase.Javac, start);
+            }
+            //按单元归类诊断信息
+            Map<String, String> units = new HashMap<>();
+            classNames.forEach((className, newClassName) -> units.put(newClassName, className));
+            for (Diagnostic<? extends JavaFileObject> diagnostic : collector.getDiagnostics()) {
+                CompileDiagnostic compileDiagnostic = CompileDiagnostic.of(diagnostic);
+                String unit = units.get(compileDiagnostic.getClassName());
+                if (null != unit) {
+                    result.getDiagnostics().get(unit).add(compileDiagnostic);
+                } else {
+                    result.getDiagnostics().values().forEach(list -> list.add(compileDiagnostic));
+                }
+            }
+            if (null == classBytes) {
+                log.error("loadClasses，compile failed, diagnostics: {}", collector.getDiagnostics());
+                listener.onCompileFailed(batchName, new RuntimeException(String.format("动态编译失败，className %s ,path:memory", batchName)));
+                return result;
+            }
+            if (timed) {
+                listener.onCompiled(batchName, classBytes.size(), size(classBytes));
+            }
+            if (null != byteCodeCache) {
+                byteCodeCache.put(cacheKey, classBytes, DynamicClassRegistry.referencedDigests(classBytes, compiler.peers));
+            }
+            if (timed) {
+                start = System.nanoTime();
+            }
+        }
+        if (isCache) {
+            Map<String, Class<?>> classes = link(units(classNames, javaFileObjects, classBytes), listener, batchName, start);
+            classNames.keySet().forEach(className -> result.getClasses().put(className, classes.get(className)));
+        } else {
+            //同一批次共用一个classloader，单元之间可以互相引用
+            DynamicClassLoader loader = new DynamicClassLoader(classBytes, Thread.currentThread().getContextClassLoader(), name -> null, classPathIndex());
+            for (Map.Entry<String, String> entry : classNames.entrySet()) {
+                result.getClasses().put(entry.getKey(), loader.loadClass(entry.getValue()));
+            }
+            if (timed) {
+                phase(listener, batchName, Phase.Define, start);
+                for (Map.Entry<String, Class<?>> entry : result.getClasses().entrySet()) {
+                    listener.onLoaded(entry.getKey(), entry.getValue(), classBytes.size());
+                }
+            }
+        }
+        result.setSuccess(true);
+        log.info("loadClasses，compile {} units,end", sources.size());
+        return result;
+    }
+
+    @Override
+    @SneakyThrows
+    public boolean unload(String className) {
+        ReentrantLock lock = compileLocks[stripe(className)];
+        lock.lockInterruptibly();
+        try {
+            Class<?> old = evict(className);
+            if (null == old) {
+                return false;
+            }
+            instanceManager.release(old);
+            registry.unregister(className);
+            Namespace namespace = namespace(className);
+            if (null != namespace) {
+                namespace.members.remove(className);
+            }
+            leakDetector.retire(className);
+            Set<String> dependents = registry.dependents(Collections.singletonList(className));
+            if (!dependents.isEmpty()) {
+                log.warn("unload class {}, still referenced by {}, the old version can not be collected", className, dependents);
+            }
+            log.info("unload class {}, generation {}", className, leakDetector.generation(className));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<LoaderLeak> detectLeaks() {
+        return leakDetector.detect(compileListener);
+    }
+
     @Override
     @SneakyThrows
     public Object invoke(String className, String methodName) {
@@ -192,48 +676,595 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
 
     @Override
     public Object invoke(Class<?> clz, String methodName, InvokeArgs constructorArgs, InvokeArgs methodArgs) throws InvocationTargetException, NoSuchMethodException, IllegalAccessException {
+        DynamicCompileListener listener = this.compileListener;
+        if (DynamicCompileListener.NOOP == listener) {
+            return doInvoke(clz, methodName, constructorArgs, methodArgs);
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Object result = doInvoke(clz, methodName, constructorArgs, methodArgs);
+            success = true;
+            return result;
+        } finally {
+            listener.onInvoke(clz, methodName, System.nanoTime() - start, success);
+        }
+    }
+
+    private Object doInvoke(Class<?> clz, String methodName, InvokeArgs constructorArgs, InvokeArgs methodArgs) throws InvocationTargetException, NoSuchMethodException, IllegalAccessException {
         try {
             InvokeArgs invokeMethodArgs = Optional.ofNullable(methodArgs).orElse(InvokeArgs.builder().build());
-            Method method = clz.getDeclaredMethod(methodName, invokeMethodArgs.getParameterTypes());
-            int modifiers = method.getModifiers();
-            if (Modifier.isStatic(modifiers)) {
-                return MethodUtils.invokeExactStaticMethod(clz, methodName, invokeMethodArgs.getArgs(), invokeMethodArgs.getParameterTypes());
+            //方法句柄按class缓存，class重新加载后自动失效
+            MethodInvoker method = MethodInvokers.method(clz, methodName, invokeMethodArgs.getParameterTypes());
+            if (method.isStatic()) {
+                return method.invoke(null, invokeMethodArgs.getArgs());
             } else {
                 InvokeArgs invokeConstructorArgs = Optional.ofNullable(constructorArgs).orElse(InvokeArgs.builder().build());
-                Object obj = clz.getDeclaredConstructor(invokeConstructorArgs.getParameterTypes()).newInstance(invokeConstructorArgs.getArgs());
-                return MethodUtils.invokeExactMethod(obj, methodName, invokeMethodArgs.getArgs(), invokeMethodArgs.getParameterTypes());
+                InstanceScope scope = instanceScope(clz);
+                Object obj = instanceManager.acquire(clz, scope, invokeConstructorArgs.getParameterTypes(), invokeConstructorArgs.getArgs());
+                try {
+                    return method.invoke(obj, invokeMethodArgs.getArgs());
+                } finally {
+                    instanceManager.release(clz, scope, obj);
+                }
             }
         } catch (NoSuchMethodException | IllegalAccessException e) {
             log.info("execute method failed，{}::{}", clz.getSimpleName(), methodName);
             log.error("execute method errMsg : {}", e.getMessage(), e);
             throw e;
-        } catch (InstantiationException e) {
-            throw new RuntimeException(e);
         }
     }
 
-    private synchronized Class<?> loadClass(Compiler compiler, String className, String javaCode) throws IOException {
+    @Override
+    public <T> T bind(String className, String methodName, Class<T> functionalInterface) {
+        if (find(className)) {
+            throw new IllegalArgumentException(String.format("the class %s not found", className));
+        }
+        return bind(cacheClass.get(className), methodName, functionalInterface);
+    }
+
+    @Override
+    @SneakyThrows
+    public <T> T bind(Class<?> clz, String methodName, Class<T> functionalInterface) {
+        Object instance = null;
+        if (!LambdaBinder.isStatic(clz, methodName, functionalInterface)) {
+            //绑定后实例被lambda持有，Singleton作用域复用单例，其他作用域绑定新实例
+            InstanceScope scope = InstanceScope.Singleton == instanceScope(clz) ? InstanceScope.Singleton : InstanceScope.Prototype;
+            instance = instanceManager.acquire(clz, scope, null, null);
+        }
+        return LambdaBinder.bind(clz, methodName, functionalInterface, instance);
+    }
+
+    @Override
+    public void setInstanceScope(String className, InstanceScope instanceScope) {
+        instanceScopes.put(className, instanceScope);
+    }
+
+    @Override
+    public void setNamespace(String className, String namespace) {
+        if (null == namespace) {
+            classNamespaces.remove(className);
+        } else {
+            classNamespaces.put(className, namespace);
+        }
+    }
+
+    @Override
+    public void setLeakDetectGraceMillis(long graceMillis) {
+        leakDetector.setGraceMillis(graceMillis);
+    }
+
+    @Override
+    public void setCompileListener(DynamicCompileListener compileListener) {
+        this.compileListener = null == compileListener ? DynamicCompileListener.NOOP : compileListener;
+    }
+
+    private InstanceScope instanceScope(Class<?> clz) {
+        return instanceScopes.isEmpty() ? instanceScope : instanceScopes.getOrDefault(clz.getSimpleName(), instanceScope);
+    }
+
+    @SneakyThrows
+    private Class<?> loadClass(Compiler compiler, String className, String javaCode) {
+        String key = ByteCodeCache.key(javaCode, className + "|" + compiler.coalesceKey());
+        CompletableFuture<Class<?>> future = new CompletableFuture<>();
+        CompletableFuture<Class<?>> inFlight = compiling.putIfAbsent(key, future);
+        if (null != inFlight) {
+            //相同源码正在编译，等待其结果
+            log.info("loadClass，compile {} is in flight, await", className);
+            try {
+                return inFlight.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        try {
+            List<ReentrantLock> locks = lockAffected(Collections.singletonList(className));
+            try {
+                Class<?> aClass = doLoadClass(compiler, className, javaCode);
+                future.complete(aClass);
+                return aClass;
+            } finally {
+                locks.forEach(ReentrantLock::unlock);
+            }
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            compiling.remove(key, future);
+        }
+    }
+
+    private Class<?> doLoadClass(Compiler compiler, String className, String javaCode) throws IOException {
         log.info("loadClass，compile {},start", className);
         log.debug("loadClass，compile code: \n{}", javaCode);
-        String javaName = DynamicClassUtils.getClassName(javaCode);
+        DynamicCompileListener listener = this.compileListener;
+        boolean timed = DynamicCompileListener.NOOP != listener;
+        long start = timed ? System.nanoTime() : 0L;
+        //只扫描一次源码，包名位于类型声明之前，替换类名后不受影响
+        JavaSourceScanner.SourceInfo info = DynamicClassUtils.scan(javaCode);
+        String javaName = DynamicClassUtils.getClassName(javaCode, info);
         if (!javaName.equals(className)) {
-            javaCode = DynamicClassUtils.replaceClassName(className, javaCode);
+            javaCode = DynamicClassUtils.replaceClassName(className, javaCode, info);
         }
-        String packageName = DynamicClassUtils.getPackageName(javaCode);
-        Pair<File, File> pair = FileUtils.createTempFileWithFileNameAndContent(packageName, className, UUID_DIR, javaCode.getBytes());
-        //删除缓存
-        if (isCache) cacheClass.remove(className);
+        String packageName = DynamicClassUtils.getPackageName(javaCode, info);
         //获取新的包名
         String newClassName = DynamicClassUtils.getClassName(packageName, className);
-        //编译class
-        compiler.compiler(newClassName, pair.getValue());
+        if (timed) {
+            start = phase(listener, className, Phase.Parse, start);
+        }
+        //其他动态class作为classpath，旧版本在新版本加载成功前保持可用
+        if (isCache) {
+            compiler.peers = registry.peerBytes(Collections.singletonList(className));
+        }
+        String cacheKey = null;
+        Map<String, byte[]> classBytes = null;
+        if (null != byteCodeCache) {
+            cacheKey = ByteCodeCache.key(javaCode, compiler.fingerprint());
+            classBytes = byteCodeCache.get(cacheKey, bytes -> isCache ? registry.peerDigests(bytes, Collections.singletonList(className)) : Collections.emptyMap());
+            log.info("loadClass，byte code cache {} {}", className, null == classBytes ? "miss" : "hit");
+            if (null == classBytes) {
+                listener.onCacheMiss(className);
+            } else {
+                listener.onCacheHit(className);
+            }
+        }
+        if (null == classBytes) {
+            if (timed) {
+                start = System.nanoTime();
+            }
+            try {
+                if (compiler instanceof MemoryCompiler) {
+                    //内存编译，不经过临时文件
+                    classBytes = ((MemoryCompiler) compiler).compiler(newClassName, javaCode);
+                    if (timed) {
+                        start = phase(listener, className, Phase.Javac, start);
+                    }
+                } else {
+                    Pair<File, File> pair = FileUtils.createTempFileWithFileNameAndContent(packageName, className, UUID_DIR, javaCode.getBytes());
+                    long write = 0L;
+                    if (timed) {
+                        long now = System.nanoTime();
+                        write = now - start;
+                        start = now;
+                    }
+                    //编译class
+                    compiler.compiler(newClassName, pair.getValue());
+                    if (timed) {
+                        start = phase(listener, className, Phase.Javac, start);
+                    }
+                    classBytes = FileUtils.readClassFiles(pair.getValue(), packageName, className);
+                    if (timed) {
+                        long now = System.nanoTime();
+                        listener.onPhase(className, Phase.Write, write + now - start);
+                        start = now;
+                    }
+                }
+            } catch (Throwable e) {
+                listener.onCompileFailed(className, e);
+                throw e;
+            }
+            if (timed) {
+                listener.onCompiled(className, classBytes.size(), size(classBytes));
+            }
+            if (null != byteCodeCache) {
+                byteCodeCache.put(cacheKey, classBytes, DynamicClassRegistry.referencedDigests(classBytes, compiler.peers));
+            }
+            if (timed) {
+                start = System.nanoTime();
+            }
+        }
+        if (isCache) {
+            //加载class并写入缓存，依赖方随之重新编译
+            DynamicUnit unit = new DynamicUnit(className, newClassName, javaCode, classBytes);
+            return link(Collections.singletonList(unit), listener, className, start).get(className);
+        }
         //加载class
-        Class<?> aClass = loadClass(newClassName, pair.getKey());
-        //写入缓存
-        if (isCache) cacheClass.put(className, aClass);
+        Class<?> aClass = loadClass(newClassName, classBytes);
+        if (timed) {
+            phase(listener, className, Phase.Define, start);
+            listener.onLoaded(className, aClass, classBytes.size());
+        }
         return aClass;
     }
 
+    /**
+     * 定义并发布新编译的class。
+     * 依赖这些class的动态class按拓扑顺序重新编译；同一命名空间的成员已在当前loader中定义时，创建新一代loader并重新定义全部成员。
+     * 全部定义成功后一次性替换，任意依赖方编译失败时不替换任何class
+     *
+     * @param units     新编译的单元
+     * @param listener  监听
+     * @param traceName 上报阶段耗时使用的名称
+     * @param start     阶段开始时间
+     * @return 加载后的class，key:className，包含重新编译的依赖方与重新定义的命名空间成员
+     */
+    private Map<String, Class<?>> link(List<DynamicUnit> units, DynamicCompileListener listener, String traceName, long start) throws IOException {
+        boolean timed = DynamicCompileListener.NOOP != listener;
+        Map<String, DynamicUnit> linked = new LinkedHashMap<>();
+        units.forEach(unit -> linked.put(unit.getClassName(), unit));
+        Set<String> dependents = registry.dependents(linked.keySet());
+        boolean recompiled = false;
+        while (true) {
+            if (!dependents.isEmpty()) {
+                recompile(dependents, linked, listener);
+                recompiled = true;
+            }
+            //需要新一代loader的命名空间，其余成员随之重新定义
+            Set<String> members = new LinkedHashSet<>();
+            groupByNamespace(linked.values()).forEach((namespace, group) -> {
+                Namespace current = null == namespace ? null : namespaces.get(namespace);
+                if (null != current && isNewGeneration(namespace, group)) {
+                    current.members.forEach(member -> {
+                        if (!linked.containsKey(member) && null != registry.unit(member)) {
+                            members.add(member);
+                        }
+                    });
+                }
+            });
+            if (members.isEmpty()) {
+                break;
+            }
+            members.forEach(member -> linked.put(member, registry.unit(member)));
+            dependents = registry.dependents(linked.keySet());
+        }
+        if (timed && recompiled) {
+            start = phase(listener, traceName, Phase.Javac, start);
+        }
+        //本次定义中的class之间按staged解析，其他动态class由registry解析；定义完成后清空，之后全部由registry解析
+        Map<String, ClassLoader> staged = new ConcurrentHashMap<>();
+        Function<String, Class<?>> peers = name -> {
+            ClassLoader loader = staged.get(name);
+            if (null == loader) {
+                return registry.peerClass(name);
+            }
+            try {
+                return loader.loadClass(name);
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        };
+        ClassLoader parent = Thread.currentThread().getContextClassLoader();
+        ClassPathIndex index = classPathIndex();
+        Map<ClassLoader, Set<String>> loaders = new LinkedHashMap<>();
+        Map<String, NamespaceClassLoader> generations = new HashMap<>();
+        Map<String, Class<?>> classes = new LinkedHashMap<>();
+        int classCount = 0;
+        try {
+            for (Map.Entry<String, List<DynamicUnit>> entry : groupByNamespace(linked.values()).entrySet()) {
+                String namespace = entry.getKey();
+                Map<String, byte[]> classBytes = new HashMap<>();
+                entry.getValue().forEach(unit -> classBytes.putAll(unit.getClassBytes()));
+                ClassLoader loader;
+                if (null == namespace) {
+                    //无命名空间，本次替换的class共用一个classloader
+                    loader = new DynamicClassLoader(classBytes, parent, peers, index);
+                } else if (isNewGeneration(namespace, entry.getValue())) {
+                    Namespace current = namespaces.get(namespace);
+                    int generation = null == current || null == current.loader ? 1 : current.loader.getGeneration() + 1;
+                    NamespaceClassLoader generationLoader = new NamespaceClassLoader(namespace, generation, classBytes, parent, peers, index);
+                    generations.put(namespace, generationLoader);
+                    loader = generationLoader;
+                } else {
+                    //新成员直接加入当前loader
+                    NamespaceClassLoader current = namespaces.get(namespace).loader;
+                    current.add(classBytes);
+                    loader = current;
+                }
+                classBytes.keySet().forEach(name -> staged.put(name, loader));
+                entry.getValue().forEach(unit -> loaders.computeIfAbsent(loader, k -> new LinkedHashSet<>()).add(unit.getClassName()));
+                classCount += classBytes.size();
+            }
+            for (DynamicUnit unit : linked.values()) {
+                classes.put(unit.getClassName(), staged.get(unit.getQualifiedName()).loadClass(unit.getQualifiedName()));
+            }
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        } finally {
+            staged.clear();
+        }
+        if (timed) {
+            start = phase(listener, traceName, Phase.Define, start);
+            int count = classCount;
+            classes.forEach((className, aClass) -> listener.onLoaded(className, aClass, count));
+        }
+        //一次性替换
+        Map<String, Class<?>> olds = publish(classes);
+        registry.register(linked.values(), classes);
+        generations.forEach((namespace, loader) -> namespaces.computeIfAbsent(namespace, k -> new Namespace()).loader = loader);
+        for (DynamicUnit unit : linked.values()) {
+            String namespace = classNamespaces.get(unit.getClassName());
+            if (null != namespace) {
+                namespaces.get(namespace).members.add(unit.getClassName());
+            }
+        }
+        loaders.forEach((loader, classNames) -> leakDetector.track(classNames, loader));
+        //热替换，释放旧版本的实例
+        olds.forEach((className, old) -> {
+            if (old != classes.get(className)) {
+                instanceManager.release(old);
+            }
+        });
+        if (timed) {
+            phase(listener, traceName, Phase.Link, start);
+        }
+        leakDetector.detect(listener);
+        return classes;
+    }
+
+    /**
+     * 按拓扑顺序重新编译依赖方，加入linked
+     */
+    private void recompile(Set<String> dependents, Map<String, DynamicUnit> linked, DynamicCompileListener listener) throws IOException {
+        log.info("loadClass，recompile dependents {} of {}", dependents, linked.keySet());
+        Set<String> excludes = new HashSet<>(linked.keySet());
+        excludes.addAll(dependents);
+        Map<String, byte[]> peers = registry.peerBytes(excludes);
+        linked.values().forEach(unit -> peers.putAll(unit.getClassBytes()));
+        MemoryCompiler compiler = memoryCompiler();
+        compiler.peers = peers;
+        for (List<String> group : registry.order(dependents)) {
+            //循环依赖的class在同一个编译任务中编译
+            Map<String, String> classNames = new LinkedHashMap<>();
+            List<MemoryJavaFileObject> javaFileObjects = new ArrayList<>();
+            for (String dependent : group) {
+                DynamicUnit unit = registry.unit(dependent);
+                classNames.put(dependent, unit.getQualifiedName());
+                javaFileObjects.add(new MemoryJavaFileObject(unit.getQualifiedName(), unit.getJavaCode()));
+            }
+            DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+            Map<String, byte[]> classBytes = compiler.compiler(javaFileObjects, collector);
+            if (null == classBytes) {
+                String names = String.join(",", group);
+                RuntimeException e = new DynamicCompileException(String.format("动态编译失败，依赖方 %s 重新编译失败", names),
+                        CompilationResult.of(names, false, collector.getDiagnostics()));
+                listener.onCompileFailed(names, e);
+                throw e;
+            }
+            units(classNames, javaFileObjects, classBytes).forEach(unit -> linked.put(unit.getClassName(), unit));
+            peers.putAll(classBytes);
+        }
+    }
+
+    /**
+     * 按命名空间分组，无命名空间的key为null
+     */
+    private Map<String, List<DynamicUnit>> groupByNamespace(Collection<DynamicUnit> units) {
+        Map<String, List<DynamicUnit>> groups = new LinkedHashMap<>();
+        for (DynamicUnit unit : units) {
+            groups.computeIfAbsent(classNamespaces.get(unit.getClassName()), k -> new ArrayList<>()).add(unit);
+        }
+        return groups;
+    }
+
+    /**
+     * 命名空间是否需要新一代loader：尚未创建，或任意class已在当前loader中
+     */
+    private boolean isNewGeneration(String namespace, List<DynamicUnit> units) {
+        if (null == namespace) {
+            return false;
+        }
+        Namespace current = namespaces.get(namespace);
+        if (null == current || null == current.loader) {
+            return true;
+        }
+        for (DynamicUnit unit : units) {
+            if (current.loader.contains(unit.getClassBytes().keySet())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按单元拆分一次编译输出的字节码，内部类归属外部类，源码中的其他顶层类归属同包的第一个单元
+     *
+     * @param classNames      className -> 全限定类名
+     * @param javaFileObjects 源码，与classNames顺序一致
+     * @param classBytes      编译输出
+     * @return 编译单元
+     */
+    private static List<DynamicUnit> units(Map<String, String> classNames, List<MemoryJavaFileObject> javaFileObjects, Map<String, byte[]> classBytes) {
+        Map<String, Map<String, byte[]>> unitBytes = new LinkedHashMap<>();
+        classNames.values().forEach(qualifiedName -> unitBytes.put(qualifiedName, new LinkedHashMap<>()));
+        for (Map.Entry<String, byte[]> entry : classBytes.entrySet()) {
+            String name = entry.getKey();
+            String owner = null;
+            for (String qualifiedName : unitBytes.keySet()) {
+                if (name.equals(qualifiedName) || name.startsWith(qualifiedName + "$")) {
+                    owner = qualifiedName;
+                    break;
+                }
+            }
+            if (null == owner) {
+                String packageName = packageName(name);
+                owner = unitBytes.keySet().stream().filter(qualifiedName -> packageName(qualifiedName).equals(packageName))
+                        .findFirst().orElse(unitBytes.keySet().iterator().next());
+            }
+            unitBytes.get(owner).put(name, entry.getValue());
+        }
+        List<DynamicUnit> units = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<String, String> entry : classNames.entrySet()) {
+            String javaCode = javaFileObjects.get(i++).getCharContent(true).toString();
+            units.add(new DynamicUnit(entry.getKey(), entry.getValue(), javaCode, unitBytes.get(entry.getValue())));
+        }
+        return units;
+    }
+
+    private static String packageName(String name) {
+        int index = name.lastIndexOf('.');
+        return index < 0 ? "" : name.substring(0, index);
+    }
+
+    /**
+     * 发布新的class，替换同名的旧版本
+     *
+     * @param classes key:className
+     * @return 被替换的旧版本
+     */
+    private synchronized Map<String, Class<?>> publish(Map<String, Class<?>> classes) {
+        Map<String, Class<?>> copy = new HashMap<>(cacheClass);
+        Map<String, Class<?>> olds = new HashMap<>();
+        classes.forEach((className, aClass) -> {
+            Class<?> old = copy.put(className, aClass);
+            if (null != old) {
+                olds.put(className, old);
+            }
+        });
+        cacheClass = copy;
+        return olds;
+    }
+
+    private synchronized Class<?> evict(String className) {
+        if (!cacheClass.containsKey(className)) {
+            return null;
+        }
+        Map<String, Class<?>> copy = new HashMap<>(cacheClass);
+        Class<?> old = copy.remove(className);
+        cacheClass = copy;
+        return old;
+    }
+
+    private MemoryCompiler memoryCompiler() {
+        if (CompilerType.Worker == compilerType) {
+            if (null != classLibJar || hostClassPath) {
+                return new WorkerCompiler(fileManagerPool, workerPool(), externalClassPaths());
+            }
+            return null != classLibFile ? new WorkerCompiler(fileManagerPool, workerPool(), classLibFile)
+                    : new WorkerCompiler(fileManagerPool, workerPool(), null == classLibPaths ? new ArrayList<>() : classLibPaths);
+        }
+        CompileClassPath classPath = compileClassPath();
+        if (null != classPath) {
+            MemoryCompiler compiler = new MemoryCompiler(fileManagerPool, new ArrayList<>());
+            compiler.classPath = classPath;
+            return compiler;
+        }
+        return null != classLibFile ? new MemoryCompiler(fileManagerPool, classLibFile)
+                : new MemoryCompiler(fileManagerPool, null == classLibPaths ? new ArrayList<>() : classLibPaths);
+    }
+
+    /**
+     * 以可执行jar或宿主classloader为classpath的编译器
+     *
+     * @return 编译器
+     */
+    private Compiler classPathCompiler() {
+        Compiler compiler;
+        if (CompilerType.Javac == compilerType) {
+            return new JavacCompiler(fileManagerPool);
+        } else if (CompilerType.Cmd == compilerType) {
+            return new CmdCompiler(cmd, externalClassPaths());
+        } else if (CompilerType.Worker == compilerType) {
+            return new WorkerCompiler(fileManagerPool, workerPool(), externalClassPaths());
+        } else if (CompilerType.Task == compilerType) {
+            compiler = new ClassPathCompiler(fileManagerPool, new ArrayList<>());
+        } else if (CompilerType.Memory == compilerType) {
+            compiler = new MemoryCompiler(fileManagerPool, new ArrayList<>());
+        } else {
+            throw new RuntimeException("不支持的类型");
+        }
+        compiler.classPath = compileClassPath();
+        return compiler;
+    }
+
+    /**
+     * 外部进程使用的可执行jar或宿主classloader的classpath。
+     * 外部进程无法读取嵌套jar与内存中的class：可执行jar解压到临时目录，宿主classloader只使用其中的本地目录与jar
+     *
+     * @return classpath列表
+     */
+    @SneakyThrows
+    private List<String> externalClassPaths() {
+        if (null == classLibJar) {
+            return new ArrayList<>(fileManagerPool.hostClassPath(Thread.currentThread().getContextClassLoader()).files());
+        }
+        File jar = classLibJar;
+        File libDir = new File(System.getProperty("java.io.tmpdir"), "java-dynamic-lib-" + jar.getName());
+        File[] jars = FileUtils.jarToLib(jar.getAbsolutePath(), libDir.getAbsolutePath()).listFiles((dir, name) -> name.endsWith(".jar"));
+        //以jar列表作为-cp，-Djava.ext.dirs在java9以上不可用
+        List<String> classPaths = new ArrayList<>();
+        if (null != jars) {
+            Arrays.sort(jars);
+            for (File file : jars) {
+                classPaths.add(file.getAbsolutePath());
+            }
+        }
+        return classPaths;
+    }
+
+    /**
+     * 代替lib的编译classpath，可执行jar优先
+     *
+     * @return classpath，未设置时返回null
+     */
+    @SneakyThrows
+    private CompileClassPath compileClassPath() {
+        if (null != classLibJar) {
+            return fileManagerPool.archive(classLibJar);
+        } else if (hostClassPath) {
+            return fileManagerPool.hostClassPath(Thread.currentThread().getContextClassLoader());
+        }
+        return null;
+    }
+
+    /**
+     * 上报阶段耗时
+     *
+     * @return 当前时间，作为下一阶段的开始时间
+     */
+    private static long phase(DynamicCompileListener listener, String className, Phase phase, long start) {
+        long now = System.nanoTime();
+        listener.onPhase(className, phase, now - start);
+        return now;
+    }
+
+    private static long size(Map<String, byte[]> classBytes) {
+        long size = 0L;
+        for (byte[] bytes : classBytes.values()) {
+            size += bytes.length;
+        }
+        return size;
+    }
+
+    private static int stripe(String className) {
+        int h = className.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % LOCK_STRIPES;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (ownCompileExecutor && null != compileExecutor) {
+                compileExecutor.close();
+            }
+            if (ownWorkerPool && null != workerPool) {
+                workerPool.close();
+            }
+        }
+        fileManagerPool.close();
+        log.info("dynamic-class-handler uid:{} closed", UUID_DIR);
+    }
+
     private boolean find(String className) {
         if (!cacheClass.containsKey(className)) {
             return true;
@@ -242,10 +1273,28 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
         return false;
     }
 
-    private Class<?> loadClass(String className, File file) throws MalformedURLException {
-        log.info("loadClass {} loader start, to {}", className, file.getParent());
-        URL[] urls = new URL[]{file.toURI().toURL()};
-        try (URLClassLoader loader = new DynamicClassLoader(urls, Thread.currentThread().getContextClassLoader())) {
+    /**
+     * classLibFile的classpath索引，未开启或建立失败时返回null
+     *
+     * @return 索引
+     */
+    private ClassPathIndex classPathIndex() {
+        File libFile = this.classLibFile;
+        if (!classPathIndex || null == libFile) {
+            return null;
+        }
+        try {
+            return ClassPathIndex.of(libFile);
+        } catch (IOException e) {
+            log.warn("class path index unavailable, dir:{}, {}", libFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private Class<?> loadClass(String className, Map<String, byte[]> classBytes) {
+        log.info("loadClass {} loader start, from memory", className);
+        DynamicClassLoader loader = new DynamicClassLoader(classBytes, Thread.currentThread().getContextClassLoader(), name -> null, classPathIndex());
+        try {
             Class<?> c = loader.loadClass(className);
             log.info("loadClass {} loader end", className);
             return c;
@@ -254,12 +1303,34 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
         }
     }
 
+    /**
+     * 命名空间的当前loader与成员
+     */
+    private static final class Namespace {
+
+        private volatile NamespaceClassLoader loader;
+
+        private final Set<String> members = ConcurrentHashMap.newKeySet();
+    }
+
     abstract static class Compiler {
 
         protected final List<String> classLibPaths;
 
         protected final File classLibFile;
 
+        /**
+         * 其他动态class的字节码，追加到classpath，javac与cmd方式不支持
+         */
+        protected Map<String, byte[]> peers = Collections.emptyMap();
+
+        /**
+         * 可执行jar或宿主classloader，不为空时代替classpath，javac与cmd方式不支持
+         */
+        protected CompileClassPath classPath;
+
+        private String fingerprint;
+
         private Compiler(File classLibFile, List<String> classLibPaths) {
             this.classLibPaths = classLibPaths;
             this.classLibFile = classLibFile;
@@ -281,67 +1352,324 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
          */
         abstract void compiler(String className, File file);
 
+        /**
+         * 获取编译classpath，lib目录会展开为目录下的全部jar
+         *
+         * @return classpath列表
+         */
+        protected List<String> classPaths() {
+            List<String> classPaths = new ArrayList<>();
+            if (null != classLibFile) {
+                File[] files = classLibFile.listFiles((dir, name) -> name.endsWith(".jar"));
+                if (null != files) {
+                    Arrays.sort(files);
+                    for (File file : files) {
+                        classPaths.add(file.getAbsolutePath());
+                    }
+                }
+            } else if (null != classLibPaths) {
+                classPaths.addAll(classLibPaths);
+            }
+            return classPaths;
+        }
+
+        /**
+         * 编译环境指纹，用于编译结果缓存。
+         * classpath取内容摘要（见{@link ContentDigest}），jar内容不变时重新部署也能命中；同一个编译器只计算一次
+         *
+         * @return 指纹
+         */
+        protected String fingerprint() {
+            String fingerprint = this.fingerprint;
+            if (null != fingerprint) {
+                return fingerprint;
+            }
+            StringBuilder builder = new StringBuilder(getClass().getSimpleName())
+                    .append('|').append(System.getProperty("java.specification.version"))
+                    .append("|-encoding utf-8");
+            for (String classPath : classPaths()) {
+                File file = new File(classPath);
+                builder.append('|').append(file.getName()).append(':').append(ContentDigest.of(file));
+            }
+            if (null != classPath) {
+                builder.append('|').append(classPath.fingerprint());
+            }
+            this.fingerprint = fingerprint = builder.toString();
+            return fingerprint;
+        }
+
+        /**
+         * 合并相同编译的key，classpath只取路径，不计算内容摘要；内容摘要只在使用编译结果缓存时计算，见{@link #fingerprint()}
+         *
+         * @return key
+         */
+        protected String coalesceKey() {
+            String key = getClass().getSimpleName() + "|" + classPathKey();
+            return null == classPath ? key : key + "|" + classPath.fingerprint();
+        }
+
+        /**
+         * 设置了可执行jar或宿主classloader时以其作为classpath，存在其他动态class时将其追加到classpath
+         *
+         * @param fileManager 文件管理器
+         * @param classPath   借用的classpath，见{@link JavaFileManagerPool#borrowClassPath(CompileClassPath)}
+         * @return 文件管理器
+         */
+        protected JavaFileManager wrap(JavaFileManager fileManager, CompileClassPath classPath) {
+            if (null != classPath) {
+                fileManager = new ClassPathJavaFileManager(fileManager, classPath);
+            }
+            return peers.isEmpty() ? fileManager : new PeerJavaFileManager(fileManager, peers);
+        }
+
+        /**
+         * 文件管理器池的key，lib目录以目录为key，jar增减时由指纹失效
+         *
+         * @return key
+         */
+        protected String classPathKey() {
+            if (null != classLibFile) {
+                return classLibFile.getAbsolutePath();
+            } else if (null != classLibPaths) {
+                return String.join(File.pathSeparator, classLibPaths);
+            }
+            return "";
+        }
+
     }
 
     private static class ClassPathCompiler extends Compiler {
 
-        public ClassPathCompiler(List<String> classLibPaths) {
+        private final JavaFileManagerPool fileManagerPool;
+
+        public ClassPathCompiler(JavaFileManagerPool fileManagerPool, List<String> classLibPaths) {
             super(classLibPaths);
+            this.fileManagerPool = fileManagerPool;
         }
 
-        public ClassPathCompiler(File classLibFile) {
+        public ClassPathCompiler(JavaFileManagerPool fileManagerPool, File classLibFile) {
             super(classLibFile);
+            this.fileManagerPool = fileManagerPool;
         }
 
 
         @Override
+        @SneakyThrows
         public void compiler(String className, File file) {
-            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
-            Iterable<? extends JavaFileObject> javaFileObjects = fileManager.getJavaFileObjects(file);
-            List<String> options;
-            if (null != classLibFile) {
-                options = Arrays.asList("-encoding", "utf-8", "-Djava.ext.dirs=", classLibFile.getAbsolutePath());
-            } else {
-                String classPath;
-                if (Platform.isWindows()) {
-                    classPath = String.join(";", classLibPaths);
-                } else {
-                    classPath = String.join(":", classLibPaths);
-                }
-                options = Arrays.asList("-encoding", "utf-8", "-cp", classPath);
+            JavaCompiler compiler = fileManagerPool.getCompiler();
+            PooledJavaFileManager fileManager = fileManagerPool.borrow(classPathKey(), classPaths());
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            Boolean call;
+            CompileClassPath borrowed = null;
+            try {
+                borrowed = fileManagerPool.borrowClassPath(classPath);
+                Iterable<? extends JavaFileObject> javaFileObjects = fileManager.getStandardFileManager().getJavaFileObjects(file);
+                List<String> options = Arrays.asList("-encoding", "utf-8");
+                log.debug("loadClass，compile options:\n{}", options);
+                JavaCompiler.CompilationTask compilationTask = CompileInterrupter.interruptible(compiler.getTask(null, wrap(fileManager, borrowed), diagnostics, options, null, javaFileObjects));
+                call = compilationTask.call();
+            } catch (Throwable e) {
+                //编译被中断时底层jar通道可能已关闭，不再复用
+                fileManagerPool.discard(fileManager);
+                throw e;
+            } finally {
+                fileManagerPool.releaseClassPath(borrowed);
             }
-            log.debug("loadClass，compile options:\n{}", options);
-            javax.tools.JavaCompiler.CompilationTask compilationTask = compiler.getTask(null, fileManager, null, options, null, javaFileObjects);
-            Boolean call = compilationTask.call();
+            fileManagerPool.release(fileManager);
             if (BooleanUtils.isTrue(call)) {
                 log.info("{} {}", className, "-编译成功");
             } else {
-                throw new RuntimeException(String.format("动态编译失败，className %s ,path:%s", className, file.getParentFile()));
+                throw new DynamicCompileException(String.format("动态编译失败，className %s ,path:%s", className, file.getParentFile()),
+                        CompilationResult.of(className, false, diagnostics.getDiagnostics()));
             }
         }
     }
 
     private static class JavacCompiler extends Compiler {
 
-        public JavacCompiler() {
+        private final JavaFileManagerPool fileManagerPool;
+
+        public JavacCompiler(JavaFileManagerPool fileManagerPool) {
             super(null, null);
+            this.fileManagerPool = fileManagerPool;
         }
 
+        /**
+         * 与javac命令相同：默认classpath，class输出到源码所在目录
+         */
         @Override
+        @SneakyThrows
         public void compiler(String className, File file) {
-            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            int result = compiler.run(null, null, null, file.getAbsolutePath());
-            if (result == 0) {
+            JavaCompiler compiler = fileManagerPool.getCompiler();
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            Boolean call;
+            try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+                call = compiler.getTask(null, fileManager, diagnostics, null, null, fileManager.getJavaFileObjects(file)).call();
+            }
+            if (BooleanUtils.isTrue(call)) {
                 log.info("{} {}", className, "-编译成功");
             } else {
-                throw new RuntimeException(String.format("动态编译失败，className %s ,path:%s", className, file.getParentFile()));
+                throw new DynamicCompileException(String.format("动态编译失败，className %s ,path:%s", className, file.getParentFile()),
+                        CompilationResult.of(className, false, diagnostics.getDiagnostics()));
+            }
+        }
+    }
+
+    private static class MemoryCompiler extends Compiler {
+
+        private final JavaFileManagerPool fileManagerPool;
+
+        public MemoryCompiler(JavaFileManagerPool fileManagerPool, List<String> classLibPaths) {
+            super(classLibPaths);
+            this.fileManagerPool = fileManagerPool;
+        }
+
+        public MemoryCompiler(JavaFileManagerPool fileManagerPool, File classLibFile) {
+            super(classLibFile);
+            this.fileManagerPool = fileManagerPool;
+        }
+
+        private MemoryCompiler(JavaFileManagerPool fileManagerPool, File classLibFile, List<String> classLibPaths) {
+            super(classLibFile, classLibPaths);
+            this.fileManagerPool = fileManagerPool;
+        }
+
+        /**
+         * 文件方式：读取源码后在内存中编译，class写到源码所在目录，与javac不指定-d时一致
+         */
+        @Override
+        @SneakyThrows
+        void compiler(String className, File file) {
+            String javaCode = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            Map<String, byte[]> classBytes = compiler(className, javaCode);
+            for (Map.Entry<String, byte[]> entry : classBytes.entrySet()) {
+                String name = entry.getKey();
+                Files.write(new File(file.getParentFile(), name.substring(name.lastIndexOf('.') + 1) + ".class").toPath(), entry.getValue());
+            }
+        }
+
+        /**
+         * 内存编译
+         *
+         * @param className 全限定类名
+         * @param javaCode  java源码
+         * @return 编译后的字节码（包含内部类）
+         */
+        public Map<String, byte[]> compiler(String className, String javaCode) throws IOException {
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            Map<String, byte[]> classBytes = compiler(Collections.singletonList(new MemoryJavaFileObject(className, javaCode)), diagnostics);
+            if (null == classBytes) {
+                throw new DynamicCompileException(String.format("动态编译失败，className %s ,path:memory", className),
+                        CompilationResult.of(className, false, diagnostics.getDiagnostics()));
+            }
+            log.info("{} {}", className, "-编译成功");
+            return classBytes;
+        }
+
+        /**
+         * 校验源码，只解析或解析并进行属性分析，不生成字节码
+         *
+         * @param source    源码
+         * @param attribute 是否进行属性分析
+         * @return 校验结果，不存在ERROR级别的诊断时成功
+         */
+        public CompilationResult validate(MemoryJavaFileObject source, boolean attribute) throws IOException {
+            JavaCompiler compiler = fileManagerPool.getCompiler();
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            PooledJavaFileManager pooledFileManager = fileManagerPool.borrow(classPathKey(), classPaths());
+            CompileClassPath borrowed = null;
+            try {
+                borrowed = fileManagerPool.borrowClassPath(classPath);
+                //不生成字节码，不需要查找注解处理器
+                List<String> options = Arrays.asList("-encoding", "utf-8", "-proc:none");
+                JavacTask task = (JavacTask) compiler.getTask(null, wrap(pooledFileManager, borrowed), diagnostics, options, null, Collections.singletonList(source));
+                if (attribute) {
+                    task.analyze();
+                } else {
+                    task.parse();
+                }
+            } catch (Throwable e) {
+                fileManagerPool.discard(pooledFileManager);
+                throw e;
+            } finally {
+                fileManagerPool.releaseClassPath(borrowed);
+            }
+            fileManagerPool.release(pooledFileManager);
+            boolean success = diagnostics.getDiagnostics().stream().noneMatch(diagnostic -> Diagnostic.Kind.ERROR == diagnostic.getKind());
+            return CompilationResult.of(source.getClassName(), success, diagnostics.getDiagnostics());
+        }
+
+        /**
+         * 内存编译，多个源码在同一个编译任务中完成
+         *
+         * @param javaFileObjects 源码
+         * @param diagnostics     诊断信息收集，可为空
+         * @return 编译后的字节码，编译失败返回null
+         */
+        public Map<String, byte[]> compiler(List<MemoryJavaFileObject> javaFileObjects, DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+            JavaCompiler compiler = fileManagerPool.getCompiler();
+            List<String> options = Arrays.asList("-encoding", "utf-8");
+            log.debug("loadClass，compile options:\n{}", options);
+            PooledJavaFileManager pooledFileManager = fileManagerPool.borrow(classPathKey(), classPaths());
+            CompileClassPath borrowed = null;
+            Map<String, byte[]> classBytes;
+            try {
+                borrowed = fileManagerPool.borrowClassPath(classPath);
+                try (MemoryJavaFileManager fileManager = new MemoryJavaFileManager(wrap(pooledFileManager, borrowed))) {
+                    JavaCompiler.CompilationTask compilationTask = CompileInterrupter.interruptible(compiler.getTask(null, fileManager, diagnostics, options, null, javaFileObjects));
+                    Boolean call = compilationTask.call();
+                    classBytes = BooleanUtils.isTrue(call) ? fileManager.getClassBytes() : null;
+                }
+            } catch (Throwable e) {
+                //编译被中断时底层jar通道可能已关闭，不再复用
+                fileManagerPool.discard(pooledFileManager);
+                throw e;
+            } finally {
+                fileManagerPool.releaseClassPath(borrowed);
+            }
+            fileManagerPool.release(pooledFileManager);
+            return classBytes;
+        }
+    }
+
+    /**
+     * 在常驻javac工作进程中编译，其他动态class随请求发送，可执行jar与宿主classloader使用解压后的本地classpath
+     */
+    private static class WorkerCompiler extends MemoryCompiler {
+
+        private final JavacWorkerPool workerPool;
+
+        private WorkerCompiler(JavaFileManagerPool fileManagerPool, JavacWorkerPool workerPool, File classLibFile, List<String> classLibPaths) {
+            super(fileManagerPool, classLibFile, classLibPaths);
+            this.workerPool = workerPool;
+        }
+
+        public WorkerCompiler(JavaFileManagerPool fileManagerPool, JavacWorkerPool workerPool, List<String> classLibPaths) {
+            this(fileManagerPool, workerPool, null, classLibPaths);
+        }
+
+        public WorkerCompiler(JavaFileManagerPool fileManagerPool, JavacWorkerPool workerPool, File classLibFile) {
+            this(fileManagerPool, workerPool, classLibFile, null);
+        }
+
+        @Override
+        public Map<String, byte[]> compiler(List<MemoryJavaFileObject> javaFileObjects, DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+            try {
+                return workerPool.compile(classPaths(), peers, javaFileObjects, diagnostics);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
             }
         }
     }
 
     private static class CmdCompiler extends Compiler {
 
+        /**
+         * javac的诊断输出：文件:行号: 级别: 信息，之后为源码行、列位置的^与补充信息
+         */
+        private static final Pattern DIAGNOSTIC = Pattern.compile("^(.+\\.java):(\\d+): ([^:]+): (.*)$");
+
         private final String cmdPath;
 
         private CmdCompiler(String cmdPath, File classLibFile, List<String> classLibPaths) {
@@ -366,6 +1694,11 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
             this(cmdPath, classLibFile, null);
         }
 
+        @Override
+        protected String fingerprint() {
+            return super.fingerprint() + "|" + cmdPath;
+        }
+
         @Override
         public void compiler(String className, File file) {
             File classFile = new File(file.getAbsolutePath().replace(".java", ".class"));
@@ -386,14 +1719,46 @@ public class DefaultDynamicClassHandlerImpl implements DynamicClassHandler {
                 execute = cmdPath + " -encoding utf-8 -cp " + classPath + " " + file.getAbsolutePath();
             }
             CommandProcess commandProcess = new CommandProcess();
-            Integer integer = commandProcess.executeStepping(execute);
-            log.info("java compiler result:{}", integer);
+            Pair<Integer, List<String>> result = commandProcess.execute((String[]) null, execute);
+            result.getValue().forEach(line -> log.info("process:{}", line));
+            log.info("java compiler result:{}", result.getKey());
             boolean exists = classFile.exists();
             if (!exists) {
-                throw new RuntimeException(String.format("动态编译失败，className %s ,path:%s", className, file.getParentFile()));
+                throw new DynamicCompileException(String.format("动态编译失败，className %s ,path:%s", className, file.getParentFile()),
+                        new CompilationResult(className, false, diagnostics(className, result.getValue())));
             }
             log.info("{} {}", className, "-编译成功");
         }
+
+        /**
+         * 解析javac命令的输出，列号取自^所在位置
+         */
+        private static List<CompileDiagnostic> diagnostics(String className, List<String> output) {
+            List<CompileDiagnostic> diagnostics = new ArrayList<>();
+            CompileDiagnostic current = null;
+            for (String line : output) {
+                Matcher matcher = DIAGNOSTIC.matcher(line);
+                if (matcher.matches()) {
+                    String kind = matcher.group(3).trim();
+                    current = CompileDiagnostic.builder()
+                            .kind("warning".equals(kind) || "警告".equals(kind) ? Diagnostic.Kind.WARNING
+                                    : "note".equals(kind) || "注".equals(kind) ? Diagnostic.Kind.NOTE : Diagnostic.Kind.ERROR)
+                            .className(className)
+                            .line(Long.parseLong(matcher.group(2)))
+                            .column(-1)
+                            .message(matcher.group(4))
+                            .build();
+                    diagnostics.add(current);
+                } else if (null != current && current.getColumn() < 0 && line.trim().equals("^")) {
+                    current.setColumn(line.indexOf('^') + 1);
+                } else if (null != current && current.getColumn() > 0 && line.startsWith(" ")) {
+                    current.setMessage(current.getMessage() + System.lineSeparator() + line.trim());
+                } else if (null != current && current.getColumn() > 0) {
+                    current = null;
+                }
+            }
+            return diagnostics;
+        }
     }
 }
 
@@ -2,17 +2,28 @@ package me.zzpp.dynamic.core.handler;
 
 import lombok.Builder;
 import lombok.Data;
+import me.zzpp.dynamic.core.cache.ByteCodeCache;
+import me.zzpp.dynamic.core.compiler.BatchCompileResult;
+import me.zzpp.dynamic.core.compiler.CompilationResult;
+import me.zzpp.dynamic.core.compiler.CompileExecutor;
+import me.zzpp.dynamic.core.compiler.JavacWorkerPool;
+import me.zzpp.dynamic.core.lifecycle.LoaderLeak;
+import me.zzpp.dynamic.core.metrics.DynamicCompileListener;
 
+import java.io.Closeable;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 动态编译实现接口
  *
  * @author zzpp
  */
-public interface DynamicClassHandler {
+public interface DynamicClassHandler extends Closeable {
 
     /**
      * 设置是否启用class缓存，默认开启
@@ -35,6 +46,31 @@ public interface DynamicClassHandler {
      */
     void setClassLibFile(File classLibFile);
 
+    /**
+     * 设置spring boot可执行jar，直接以其中的BOOT-INF/classes与BOOT-INF/lib作为classpath编译，无需jarToLib解压；
+     * 优先于classLibFile与classLibPaths。cmd方式会先解压到临时目录
+     *
+     * @param classLibJar 可执行jar，见{@link me.zzpp.dynamic.core.compiler.FatJarArchive#runningJar()}
+     */
+    void setClassLibJar(File classLibJar);
+
+    /**
+     * 设置是否以线程上下文classloader层级作为classpath编译，动态源码可以直接引用宿主应用中的class，无需lib目录。
+     * 每个classloader只扫描一次建立包索引，字节码在用到时通过getResourceAsStream读取；classLibJar优先
+     *
+     * @param hostClassPath 是否开启
+     */
+    void setHostClassPath(boolean hostClassPath);
+
+    /**
+     * 设置是否建立classLibFile的classpath索引，索引持久化到lib目录，jar不变时直接读取。
+     * 开启后动态class的classloader中，lib中不存在的class不再经过父加载器查找，父加载器查找失败的class会被缓存；
+     * lib目录需要与运行时的classpath一致，如jarToLib生成的目录
+     *
+     * @param classPathIndex 是否开启
+     */
+    void setClassPathIndex(boolean classPathIndex);
+
     /**
      * 设置javac命令的命令地址
      *
@@ -42,6 +78,65 @@ public interface DynamicClassHandler {
      */
     void setCmd(String cmdPath);
 
+    /**
+     * 设置编译结果缓存，相同源码、classpath、编译参数直接复用字节码，不再调用javac
+     *
+     * @param byteCodeCache
+     */
+    void setByteCodeCache(ByteCodeCache byteCodeCache);
+
+    /**
+     * 设置异步编译线程池，未设置时使用默认的有界线程池
+     *
+     * @param compileExecutor
+     */
+    void setCompileExecutor(CompileExecutor compileExecutor);
+
+    /**
+     * 设置javac工作进程池，Worker方式使用，未设置时使用默认进程池并随handler关闭；多个handler可以共用一个进程池
+     *
+     * @param workerPool 进程池
+     */
+    void setWorkerPool(JavacWorkerPool workerPool);
+
+    /**
+     * 设置非静态方法执行时的默认实例作用域，默认Prototype（每次执行创建新实例）
+     *
+     * @param instanceScope
+     */
+    void setInstanceScope(InstanceScope instanceScope);
+
+    /**
+     * 设置指定class的实例作用域
+     *
+     * @param className     className
+     * @param instanceScope 作用域
+     */
+    void setInstanceScope(String className, InstanceScope instanceScope);
+
+    /**
+     * 设置class所属的命名空间，同一命名空间的class共用一个classloader并优先从中加载，可以直接互相引用。
+     * 新成员加入当前loader，已有成员重新加载时创建新一代loader并重新定义全部成员；需要开启class缓存
+     *
+     * @param className className
+     * @param namespace 命名空间，为空时取消
+     */
+    void setNamespace(String className, String namespace);
+
+    /**
+     * 设置classloader泄漏检测的宽限时间，class被替换或卸载超过该时间且期间发生过GC仍未被回收视为泄漏，默认1分钟
+     *
+     * @param graceMillis
+     */
+    void setLeakDetectGraceMillis(long graceMillis);
+
+    /**
+     * 设置编译过程监听，用于采集各阶段耗时、缓存命中与方法执行耗时，默认不监听
+     *
+     * @param compileListener
+     */
+    void setCompileListener(DynamicCompileListener compileListener);
+
 
     /**
      * 将java源码编译并加载class
@@ -57,7 +152,7 @@ public interface DynamicClassHandler {
      * @param className className（同时也是classname），注意:className必须与javaCode中的className保持一致
      * @param javaCode  java代码
      * @return class
-     * @throws Exception
+     * @throws Exception 编译失败时为{@link me.zzpp.dynamic.core.compiler.DynamicCompileException}，包含各错误的行号、列号与信息
      */
     Class<?> loadClass(String className, String javaCode) throws Exception;
 
@@ -83,6 +178,78 @@ public interface DynamicClassHandler {
      */
     Class<?> loadClass(File classLibFile, String javaCode);
 
+    /**
+     * 异步编译并加载class，在编译线程池中执行，不阻塞调用线程。
+     * 提交前在调用线程检查语法，语法错误的源码不进入编译线程池
+     *
+     * @param javaCode java代码
+     * @return future，语法错误时以DynamicCompileException结束，线程池已满时以RejectedExecutionException结束，取消时中断编译
+     */
+    CompletableFuture<Class<?>> loadClassAsync(String javaCode);
+
+    /**
+     * 异步编译并加载class
+     *
+     * @param className className，注意:className必须与javaCode中的className保持一致
+     * @param javaCode  java代码
+     * @return future，语法错误时以DynamicCompileException结束，线程池已满时以RejectedExecutionException结束，取消时中断编译
+     */
+    CompletableFuture<Class<?>> loadClassAsync(String className, String javaCode);
+
+    /**
+     * 异步编译并加载class，自定义超时时间
+     *
+     * @param className className，注意:className必须与javaCode中的className保持一致
+     * @param javaCode  java代码
+     * @param timeout   超时时间，超时后以TimeoutException结束并中断编译
+     * @param unit      时间单位
+     * @return future
+     */
+    CompletableFuture<Class<?>> loadClassAsync(String className, String javaCode, long timeout, TimeUnit unit);
+
+    /**
+     * 只检查语法，不生成字节码、不读取classpath、不加载class，可用于编辑器的实时检查
+     *
+     * @param javaCode java代码
+     * @return 校验结果，包含语法错误的行号、列号与信息
+     */
+    CompilationResult validate(String javaCode);
+
+    /**
+     * 校验源码，不生成字节码、不加载class
+     *
+     * @param javaCode  java代码
+     * @param attribute 是否进行属性分析（符号解析与类型检查），使用与编译相同的classpath与已加载的动态class；否则只检查语法
+     * @return 校验结果
+     */
+    CompilationResult validate(String javaCode, boolean attribute);
+
+    /**
+     * 批量编译并加载class，全部源码在同一个编译任务中完成，单元之间可以互相引用。
+     * 与compilerType无关，始终使用内存编译；等待编译锁时被中断抛出InterruptedException
+     *
+     * @param sources key:className，value:java代码
+     * @return 加载后的class及各单元的诊断信息
+     */
+    BatchCompileResult loadClasses(Map<String, String> sources);
+
+    /**
+     * 卸载class：移出class缓存并销毁其实例，classloader不再被handler引用，等待GC回收；
+     * 等待编译锁时被中断抛出InterruptedException
+     *
+     * @param className className
+     * @return class是否存在
+     */
+    boolean unload(String className);
+
+    /**
+     * 检测被替换或卸载后仍未被回收的classloader，每个loader只报告一次。
+     * loader只在GC后才能判断是否回收，宽限时间内或期间未发生GC的loader不会被报告
+     *
+     * @return 本次新发现的泄漏
+     */
+    List<LoaderLeak> detectLeaks();
+
 
 //    /**
 //     * 将java源码编译并加载class，自定义lib包路径
@@ -158,6 +325,34 @@ public interface DynamicClassHandler {
      */
     Object invoke(Class<?> clz, String methodName, InvokeArgs constructorArgs, InvokeArgs methodArgs) throws InvocationTargetException, NoSuchMethodException, IllegalAccessException;
 
+    /**
+     * 关闭handler，释放复用的编译器资源
+     */
+    @Override
+    void close();
+
+    /**
+     * 将动态class的方法绑定为函数式接口，例如 bind("Rule", "apply", Function.class)。
+     * 返回LambdaMetafactory生成的实现，调用开销与普通lambda一致；非静态方法会绑定一个新实例，
+     * java14+ 上private方法不支持绑定
+     *
+     * @param className           className
+     * @param methodName          方法名，参数个数需要与接口方法一致
+     * @param functionalInterface 函数式接口
+     * @return 函数式接口的实现
+     */
+    <T> T bind(String className, String methodName, Class<T> functionalInterface);
+
+    /**
+     * 将class对象的方法绑定为函数式接口
+     *
+     * @param clz                 class对象
+     * @param methodName          方法名，参数个数需要与接口方法一致
+     * @param functionalInterface 函数式接口
+     * @return 函数式接口的实现
+     */
+    <T> T bind(Class<?> clz, String methodName, Class<T> functionalInterface);
+
 
     enum CompilerType {
 
@@ -166,6 +361,44 @@ public interface DynamicClassHandler {
         Javac,
 
         Cmd,
+
+        /**
+         * 纯内存编译，源码与字节码均不落盘
+         */
+        Memory,
+
+        /**
+         * 常驻javac工作进程池编译，编译与宿主堆隔离，见{@link JavacWorkerPool}
+         */
+        Worker,
+        ;
+    }
+
+
+    /**
+     * 非静态方法执行时的实例作用域，class热替换时旧版本的实例会被释放，实现AutoCloseable的实例会被close
+     */
+    enum InstanceScope {
+
+        /**
+         * 每次执行创建新实例
+         */
+        Prototype,
+
+        /**
+         * 每个class版本一个实例
+         */
+        Singleton,
+
+        /**
+         * 每个线程一个实例
+         */
+        ThreadLocal,
+
+        /**
+         * 实例池，执行期间独占一个实例
+         */
+        Pooled,
         ;
     }
 
@@ -0,0 +1,225 @@
+package me.zzpp.dynamic.core.invoke;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zzpp.dynamic.core.handler.DynamicClassHandler.InstanceScope;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 非静态方法的实例管理，按作用域复用实例。
+ * 实例挂在{@link ClassValue}上，class热替换时调用{@link #release(Class)}销毁旧版本的实例。
+ * 销毁后的实例容器保留在class上，之后仍在旧class上的调用每次创建新实例并在归还时销毁，不会再缓存实例
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class InstanceManager {
+
+    private final int poolSize;
+
+    private final ClassValue<Instances> instances = new ClassValue<Instances>() {
+        @Override
+        protected Instances computeValue(Class<?> type) {
+            return new Instances();
+        }
+    };
+
+    /**
+     * @param poolSize Pooled作用域每个class最多缓存的空闲实例数
+     */
+    public InstanceManager(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * 获取实例，使用完毕需要调用{@link #release(Class, InstanceScope, Object)}
+     *
+     * @param clz              class对象
+     * @param scope            作用域
+     * @param constructorTypes 构造参数类型，非Prototype作用域只在首次创建实例时使用
+     * @param constructorArgs  构造参数
+     * @return 实例
+     */
+    public Object acquire(Class<?> clz, InstanceScope scope, Class<?>[] constructorTypes, Object[] constructorArgs)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        Object instance = null;
+        switch (scope) {
+            case Singleton:
+                instance = instances.get(clz).singleton(clz, constructorTypes, constructorArgs);
+                break;
+            case ThreadLocal:
+                instance = instances.get(clz).threadLocal(clz, constructorTypes, constructorArgs);
+                break;
+            case Pooled:
+                instance = instances.get(clz).pool(poolSize).poll();
+                break;
+            case Prototype:
+            default:
+                break;
+        }
+        //已销毁或池中没有空闲实例时创建新实例
+        return null != instance ? instance : newInstance(clz, constructorTypes, constructorArgs);
+    }
+
+    /**
+     * 归还实例，Pooled作用域放回池中，池已满时销毁；class已被替换时销毁替换后创建的实例
+     *
+     * @param clz      class对象
+     * @param scope    作用域
+     * @param instance 实例
+     */
+    public void release(Class<?> clz, InstanceScope scope, Object instance) {
+        if (InstanceScope.Prototype != scope && !instances.get(clz).keep(scope, instance, poolSize)) {
+            destroy(instance);
+        }
+    }
+
+    /**
+     * class被替换或卸载，销毁该class的全部实例。
+     * 实例容器不移除：移除后仍在旧class上的调用会重新建立容器并缓存实例，这些实例不会再被销毁，并持有旧的classloader
+     *
+     * @param clz class对象
+     */
+    public void release(Class<?> clz) {
+        instances.get(clz).destroy();
+    }
+
+    private static Object newInstance(Class<?> clz, Class<?>[] constructorTypes, Object[] constructorArgs)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        return MethodInvokers.constructor(clz, constructorTypes).invoke(null, constructorArgs);
+    }
+
+    private static void destroy(Object instance) {
+        if (instance instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) instance).close();
+            } catch (Exception e) {
+                log.warn("destroy instance {} failed, errMsg : {}", instance.getClass().getName(), e.getMessage());
+            }
+        }
+    }
+
+    private static final class Instances {
+
+        private volatile Object singleton;
+
+        private volatile ThreadLocal<Object> threadLocal;
+
+        /**
+         * ThreadLocal作用域创建过的实例，用于热替换时统一销毁
+         */
+        private final List<Object> threadInstances = new ArrayList<>();
+
+        /**
+         * 销毁时已处理的单例与ThreadLocal实例，进行中的调用归还时不再重复销毁
+         */
+        private final Set<Object> destroyed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private volatile BlockingQueue<Object> pool;
+
+        private volatile boolean released;
+
+        /**
+         * @return 单例，已销毁时返回null
+         */
+        private Object singleton(Class<?> clz, Class<?>[] constructorTypes, Object[] constructorArgs)
+                throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+            Object instance = singleton;
+            if (null == instance) {
+                synchronized (this) {
+                    if (null == singleton && !released) {
+                        singleton = newInstance(clz, constructorTypes, constructorArgs);
+                    }
+                    instance = singleton;
+                }
+            }
+            return instance;
+        }
+
+        /**
+         * @return 当前线程的实例，已销毁时返回null
+         */
+        private Object threadLocal(Class<?> clz, Class<?>[] constructorTypes, Object[] constructorArgs)
+                throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+            ThreadLocal<Object> local = threadLocal;
+            if (null == local) {
+                synchronized (this) {
+                    if (null == threadLocal && !released) {
+                        threadLocal = new ThreadLocal<>();
+                    }
+                    local = threadLocal;
+                }
+                if (null == local) {
+                    return null;
+                }
+            }
+            Object instance = local.get();
+            if (null == instance) {
+                instance = newInstance(clz, constructorTypes, constructorArgs);
+                synchronized (this) {
+                    if (released) {
+                        //创建期间被销毁，作为临时实例归还时销毁，不再放入ThreadLocal
+                        return instance;
+                    }
+                    threadInstances.add(instance);
+                }
+                local.set(instance);
+            }
+            return instance;
+        }
+
+        /**
+         * 归还时判断是否保留实例，与{@link #destroy()}互斥，不会放入已清空的池
+         *
+         * @return false时调用方销毁实例
+         */
+        private synchronized boolean keep(InstanceScope scope, Object instance, int poolSize) {
+            if (released) {
+                return destroyed.contains(instance);
+            }
+            return InstanceScope.Pooled != scope || pool(poolSize).offer(instance);
+        }
+
+        private BlockingQueue<Object> pool(int poolSize) {
+            BlockingQueue<Object> queue = pool;
+            if (null == queue) {
+                synchronized (this) {
+                    if (null == pool) {
+                        pool = new ArrayBlockingQueue<>(poolSize);
+                    }
+                    queue = pool;
+                }
+            }
+            return queue;
+        }
+
+        private synchronized void destroy() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (null != singleton) {
+                destroyed.add(singleton);
+                InstanceManager.destroy(singleton);
+                singleton = null;
+            }
+            //其他线程的ThreadLocal值无法清除，丢弃ThreadLocal本身后随线程回收
+            threadLocal = null;
+            destroyed.addAll(threadInstances);
+            threadInstances.forEach(InstanceManager::destroy);
+            threadInstances.clear();
+            if (null != pool) {
+                List<Object> idle = new ArrayList<>();
+                pool.drainTo(idle);
+                idle.forEach(InstanceManager::destroy);
+            }
+        }
+    }
+}
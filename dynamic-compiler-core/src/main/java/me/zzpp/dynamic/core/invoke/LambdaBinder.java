@@ -0,0 +1,274 @@
+package me.zzpp.dynamic.core.invoke;
+
+import me.zzpp.dynamic.core.DynamicClassLoader;
+import me.zzpp.dynamic.core.compiler.MemoryJavaFileManager;
+import me.zzpp.dynamic.core.compiler.MemoryJavaFileObject;
+import me.zzpp.dynamic.core.utils.DynamicClassUtils;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 通过{@link LambdaMetafactory}把动态class的方法绑定为调用方提供的函数式接口。
+ * 生成的实现与普通lambda一致，JIT可以内联，调用时没有参数数组和反射开销
+ *
+ * @author zzpp
+ */
+public final class LambdaBinder {
+
+    private static final int ALL_MODES = MethodHandles.Lookup.PUBLIC | MethodHandles.Lookup.PRIVATE
+            | MethodHandles.Lookup.PROTECTED | MethodHandles.Lookup.PACKAGE;
+
+    /**
+     * 缓存lambda工厂，key:方法名#接口名
+     */
+    private static final ClassValue<Map<String, Factory>> FACTORIES = new ClassValue<Map<String, Factory>>() {
+        @Override
+        protected Map<String, Factory> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * 辅助lookup类的名称
+     */
+    private static final String HELPER_NAME = "$$DynamicLookup";
+
+    /**
+     * 各个包的辅助lookup类字节码，key:包名
+     */
+    private static final Map<String, byte[]> HELPER_BYTES = new ConcurrentHashMap<>();
+
+    private LambdaBinder() {
+    }
+
+    /**
+     * 方法是否为静态方法，非静态方法绑定时需要传入实例
+     *
+     * @param clz                 class对象
+     * @param methodName          方法名
+     * @param functionalInterface 函数式接口
+     * @return boolean
+     */
+    public static boolean isStatic(Class<?> clz, String methodName, Class<?> functionalInterface) {
+        return factory(clz, methodName, functionalInterface).isStatic;
+    }
+
+    /**
+     * 绑定
+     *
+     * @param clz                 class对象
+     * @param methodName          方法名，参数个数需要与接口方法一致
+     * @param functionalInterface 函数式接口，例如 Function.class
+     * @param instance            实例，静态方法传null
+     * @return 函数式接口的实现
+     */
+    public static <T> T bind(Class<?> clz, String methodName, Class<T> functionalInterface, Object instance) {
+        Factory factory = factory(clz, methodName, functionalInterface);
+        try {
+            Object bound = factory.isStatic ? factory.handle.invoke() : factory.handle.invoke(instance);
+            return functionalInterface.cast(bound);
+        } catch (Throwable e) {
+            throw new IllegalStateException(String.format("bind %s::%s to %s failed", clz.getName(), methodName, functionalInterface.getName()), e);
+        }
+    }
+
+    private static Factory factory(Class<?> clz, String methodName, Class<?> functionalInterface) {
+        Map<String, Factory> factories = FACTORIES.get(clz);
+        String key = methodName + "#" + functionalInterface.getName();
+        Factory factory = factories.get(key);
+        if (null == factory) {
+            factory = createFactory(clz, methodName, functionalInterface);
+            factories.putIfAbsent(key, factory);
+        }
+        return factory;
+    }
+
+    private static Factory createFactory(Class<?> clz, String methodName, Class<?> functionalInterface) {
+        Method sam = samMethod(functionalInterface);
+        Method method = implMethod(clz, methodName, sam);
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        MethodType samMethodType = MethodType.methodType(sam.getReturnType(), sam.getParameterTypes());
+        MethodType instantiatedMethodType = instantiatedType(method, sam);
+        MethodType invokedType = isStatic ? MethodType.methodType(functionalInterface)
+                : MethodType.methodType(functionalInterface, clz);
+        try {
+            CallSite callSite;
+            try {
+                MethodHandles.Lookup lookup = privateLookupIn(clz);
+                callSite = LambdaMetafactory.metafactory(lookup, sam.getName(), invokedType,
+                        samMethodType, lookup.unreflect(method), instantiatedMethodType);
+            } catch (LambdaConversionException e) {
+                //java14+ 跨模块的privateLookupIn没有完整权限，改用同包的辅助类作为调用方
+                MethodHandles.Lookup lookup = helperLookup(clz);
+                callSite = LambdaMetafactory.metafactory(lookup, sam.getName(), invokedType,
+                        samMethodType, lookup.unreflect(method), instantiatedMethodType);
+            }
+            return new Factory(callSite.getTarget(), isStatic);
+        } catch (Throwable e) {
+            throw new IllegalStateException(String.format("bind %s::%s to %s failed", clz.getName(), methodName, functionalInterface.getName()), e);
+        }
+    }
+
+    /**
+     * 函数式接口的抽象方法
+     */
+    private static Method samMethod(Class<?> functionalInterface) {
+        if (!functionalInterface.isInterface()) {
+            throw new IllegalArgumentException(functionalInterface.getName() + " is not an interface");
+        }
+        Method sam = null;
+        for (Method method : functionalInterface.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers()) || isObjectMethod(method)) {
+                continue;
+            }
+            if (null != sam) {
+                throw new IllegalArgumentException(functionalInterface.getName() + " is not a functional interface");
+            }
+            sam = method;
+        }
+        if (null == sam) {
+            throw new IllegalArgumentException(functionalInterface.getName() + " has no abstract method");
+        }
+        return sam;
+    }
+
+    /**
+     * 按方法名与参数个数查找实现方法，存在重载时优先选择参数类型与接口一致的方法
+     */
+    private static Method implMethod(Class<?> clz, String methodName, Method sam) {
+        List<Method> candidates = new ArrayList<>();
+        for (Method method : clz.getDeclaredMethods()) {
+            if (method.getName().equals(methodName) && !method.isSynthetic()
+                    && method.getParameterCount() == sam.getParameterCount()) {
+                candidates.add(method);
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException(String.format("method %s::%s with %d parameters not found", clz.getName(), methodName, sam.getParameterCount()));
+        }
+        if (candidates.size() > 1) {
+            for (Method candidate : candidates) {
+                if (Arrays.equals(candidate.getParameterTypes(), sam.getParameterTypes())) {
+                    return candidate;
+                }
+            }
+            throw new IllegalArgumentException(String.format("method %s::%s is ambiguous", clz.getName(), methodName));
+        }
+        return candidates.get(0);
+    }
+
+    /**
+     * 接口方法的泛型被实例化后的类型：接口为引用类型的位置使用实现方法类型的包装类型
+     */
+    private static MethodType instantiatedType(Method method, Method sam) {
+        Class<?>[] samTypes = sam.getParameterTypes();
+        Class<?>[] implTypes = method.getParameterTypes();
+        Class<?>[] types = new Class[implTypes.length];
+        for (int i = 0; i < implTypes.length; i++) {
+            types[i] = samTypes[i].isPrimitive() ? implTypes[i] : wrap(implTypes[i]);
+        }
+        Class<?> returnType;
+        if (void.class == sam.getReturnType()) {
+            returnType = void.class;
+        } else if (sam.getReturnType().isPrimitive()) {
+            returnType = method.getReturnType();
+        } else {
+            returnType = wrap(method.getReturnType());
+        }
+        return MethodType.methodType(returnType, types);
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        try {
+            Object.class.getMethod(method.getName(), method.getParameterTypes());
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 获取目标class的完整权限lookup，lambda class需要定义在动态class所在的classloader中。
+     * java9+使用privateLookupIn，java8使用Lookup的私有构造器
+     */
+    private static MethodHandles.Lookup privateLookupIn(Class<?> clz) throws ReflectiveOperationException {
+        try {
+            Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+            return (MethodHandles.Lookup) privateLookupIn.invoke(null, clz, MethodHandles.lookup());
+        } catch (NoSuchMethodException e) {
+            Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(clz, ALL_MODES);
+        }
+    }
+
+    /**
+     * 在动态class的classloader与包中定义辅助类，返回辅助类的完整权限lookup。
+     * 辅助类与目标class同包，可以绑定public、protected与包内可见的方法
+     */
+    private static MethodHandles.Lookup helperLookup(Class<?> clz) throws ReflectiveOperationException {
+        if (!(clz.getClassLoader() instanceof DynamicClassLoader)) {
+            throw new IllegalStateException(clz.getName() + " is not loaded by DynamicClassLoader");
+        }
+        String packageName = null == clz.getPackage() ? "" : clz.getPackage().getName();
+        String helperName = DynamicClassUtils.getClassName(packageName, HELPER_NAME);
+        byte[] bytes = HELPER_BYTES.computeIfAbsent(packageName, LambdaBinder::compileHelper);
+        Class<?> helper = ((DynamicClassLoader) clz.getClassLoader()).defineHelperClass(helperName, bytes);
+        return (MethodHandles.Lookup) helper.getMethod("lookup").invoke(null);
+    }
+
+    private static byte[] compileHelper(String packageName) {
+        String helperName = DynamicClassUtils.getClassName(packageName, HELPER_NAME);
+        String javaCode = ("".equals(packageName) ? "" : "package " + packageName + ";\n")
+                + "public final class " + HELPER_NAME + " {\n"
+                + "    public static java.lang.invoke.MethodHandles.Lookup lookup() {\n"
+                + "        return java.lang.invoke.MethodHandles.lookup();\n"
+                + "    }\n"
+                + "}\n";
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (MemoryJavaFileManager fileManager = new MemoryJavaFileManager(compiler.getStandardFileManager(null, null, null))) {
+            Boolean call = compiler.getTask(null, fileManager, null, Collections.singletonList("-proc:none"), null,
+                    Collections.singletonList(new MemoryJavaFileObject(helperName, javaCode))).call();
+            byte[] bytes = fileManager.getClassBytes().get(helperName);
+            if (!Boolean.TRUE.equals(call) || null == bytes) {
+                throw new IllegalStateException("compile lookup helper failed, package: " + packageName);
+            }
+            return bytes;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Factory {
+
+        private final MethodHandle handle;
+
+        private final boolean isStatic;
+
+        private Factory(MethodHandle handle, boolean isStatic) {
+            this.handle = handle;
+            this.isStatic = isStatic;
+        }
+    }
+}
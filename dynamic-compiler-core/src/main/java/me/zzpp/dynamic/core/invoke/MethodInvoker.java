@@ -0,0 +1,82 @@
+package me.zzpp.dynamic.core.invoke;
+
+import org.apache.commons.lang3.ClassUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * 预解析的方法调用器，句柄已适配为 (Object target, Object[] args)Object，
+ * 调用时只有一次句柄调用，没有反射查找
+ *
+ * @author zzpp
+ */
+public final class MethodInvoker {
+
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final MethodHandle handle;
+
+    /**
+     * 实例类型，静态方法、构造器为null
+     */
+    private final Class<?> targetType;
+
+    private final Class<?>[] parameterTypes;
+
+    MethodInvoker(MethodHandle handle, Class<?> targetType, Class<?>[] parameterTypes) {
+        this.handle = handle;
+        this.targetType = targetType;
+        this.parameterTypes = parameterTypes;
+    }
+
+    /**
+     * 是否无需实例即可调用（静态方法或构造器）
+     *
+     * @return boolean
+     */
+    public boolean isStatic() {
+        return null == targetType;
+    }
+
+    /**
+     * 调用
+     *
+     * @param target 实例，静态方法、构造器传null
+     * @param args   参数
+     * @return 返回值，void方法返回null
+     * @throws IllegalArgumentException  实例或参数个数、类型不匹配
+     * @throws InvocationTargetException 方法内部抛出的异常，Error直接抛出
+     */
+    public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+        Object[] invokeArgs = null == args ? EMPTY_ARGS : args;
+        check(target, invokeArgs);
+        try {
+            return (Object) handle.invokeExact(target, invokeArgs);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * 调用前校验，句柄适配失败的ClassCastException不会被当作方法内部异常
+     */
+    private void check(Object target, Object[] args) {
+        if (null != targetType && !targetType.isInstance(target)) {
+            throw new IllegalArgumentException("object is not an instance of " + targetType.getName());
+        }
+        if (args.length != parameterTypes.length) {
+            throw new IllegalArgumentException("wrong number of arguments: " + args.length + " expected: " + parameterTypes.length);
+        }
+        for (int i = 0; i < args.length; i++) {
+            Class<?> type = parameterTypes[i];
+            Object arg = args[i];
+            //与Method.invoke一致，允许拆箱与基本类型拓宽
+            if (null == arg ? type.isPrimitive() : !ClassUtils.isAssignable(arg.getClass(), type, true)) {
+                throw new IllegalArgumentException("argument type mismatch at " + i + ": " + (null == arg ? "null" : arg.getClass().getName()) + " expected: " + type.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package me.zzpp.dynamic.core.invoke;
+
+import org.apache.commons.lang3.reflect.MethodUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按class缓存的方法调用器。
+ * 缓存挂在{@link ClassValue}上，class重新加载后新的class对象使用新的缓存，旧缓存随旧class一起回收
+ *
+ * @author zzpp
+ */
+public final class MethodInvokers {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Class<?>[] EMPTY_TYPES = new Class<?>[0];
+
+    private static final ClassValue<Map<Signature, MethodInvoker>> INVOKERS = new ClassValue<Map<Signature, MethodInvoker>>() {
+        @Override
+        protected Map<Signature, MethodInvoker> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * public方法（包含继承的方法）的调用器，与declared方法分开缓存
+     */
+    private static final ClassValue<Map<Signature, MethodInvoker>> PUBLIC_INVOKERS = new ClassValue<Map<Signature, MethodInvoker>>() {
+        @Override
+        protected Map<Signature, MethodInvoker> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private MethodInvokers() {
+    }
+
+    /**
+     * 获取方法调用器
+     *
+     * @param clz            class对象
+     * @param methodName     方法名
+     * @param parameterTypes 参数类型
+     * @return MethodInvoker
+     * @throws NoSuchMethodException
+     * @throws IllegalAccessException
+     */
+    public static MethodInvoker method(Class<?> clz, String methodName, Class<?>[] parameterTypes) throws NoSuchMethodException, IllegalAccessException {
+        Class<?>[] types = null == parameterTypes ? EMPTY_TYPES : parameterTypes;
+        Map<Signature, MethodInvoker> invokers = INVOKERS.get(clz);
+        Signature signature = new Signature(methodName, types);
+        MethodInvoker invoker = invokers.get(signature);
+        if (null == invoker) {
+            Method method = clz.getDeclaredMethod(methodName, types);
+            method.setAccessible(true);
+            invoker = invoker(method, types);
+            invokers.putIfAbsent(new Signature(signature.name, types.clone()), invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * 获取public方法调用器，查找规则与MethodUtils.invokeExactMethod一致：参数类型完全匹配，包含继承的方法
+     *
+     * @param clz            class对象
+     * @param methodName     方法名
+     * @param parameterTypes 参数类型
+     * @return MethodInvoker
+     * @throws NoSuchMethodException
+     * @throws IllegalAccessException
+     */
+    public static MethodInvoker publicMethod(Class<?> clz, String methodName, Class<?>[] parameterTypes) throws NoSuchMethodException, IllegalAccessException {
+        Class<?>[] types = null == parameterTypes ? EMPTY_TYPES : parameterTypes;
+        Map<Signature, MethodInvoker> invokers = PUBLIC_INVOKERS.get(clz);
+        Signature signature = new Signature(methodName, types);
+        MethodInvoker invoker = invokers.get(signature);
+        if (null == invoker) {
+            Method method = MethodUtils.getAccessibleMethod(clz, methodName, types);
+            if (null == method) {
+                throw new NoSuchMethodException("No such accessible method: " + methodName + "() on object: " + clz.getName());
+            }
+            invoker = invoker(method, types);
+            invokers.putIfAbsent(new Signature(signature.name, types.clone()), invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * 获取构造器调用器，调用时target传null
+     *
+     * @param clz            class对象
+     * @param parameterTypes 参数类型
+     * @return MethodInvoker
+     * @throws NoSuchMethodException
+     * @throws IllegalAccessException
+     */
+    public static MethodInvoker constructor(Class<?> clz, Class<?>[] parameterTypes) throws NoSuchMethodException, IllegalAccessException {
+        Class<?>[] types = null == parameterTypes ? EMPTY_TYPES : parameterTypes;
+        Map<Signature, MethodInvoker> invokers = INVOKERS.get(clz);
+        Signature signature = new Signature("<init>", types);
+        MethodInvoker invoker = invokers.get(signature);
+        if (null == invoker) {
+            Constructor<?> constructor = clz.getDeclaredConstructor(types);
+            constructor.setAccessible(true);
+            MethodHandle handle = MethodHandles.dropArguments(LOOKUP.unreflectConstructor(constructor), 0, Object.class);
+            invoker = new MethodInvoker(spread(handle, types.length), null, constructor.getParameterTypes());
+            invokers.putIfAbsent(new Signature(signature.name, types.clone()), invoker);
+        }
+        return invoker;
+    }
+
+    private static MethodInvoker invoker(Method method, Class<?>[] types) throws IllegalAccessException {
+        MethodHandle handle = LOOKUP.unreflect(method);
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        if (isStatic) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return new MethodInvoker(spread(handle, types.length), isStatic ? null : method.getDeclaringClass(), method.getParameterTypes());
+    }
+
+    /**
+     * 适配为 (Object, Object[])Object
+     */
+    private static MethodHandle spread(MethodHandle handle, int parameterCount) {
+        return handle.asType(MethodType.genericMethodType(parameterCount + 1))
+                .asSpreader(Object[].class, parameterCount);
+    }
+
+    private static final class Signature {
+
+        private final String name;
+
+        private final Class<?>[] parameterTypes;
+
+        private final int hash;
+
+        private Signature(String name, Class<?>[] parameterTypes) {
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+            this.hash = 31 * name.hashCode() + Arrays.hashCode(parameterTypes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Signature)) {
+                return false;
+            }
+            Signature signature = (Signature) o;
+            return name.equals(signature.name) && Arrays.equals(parameterTypes, signature.parameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
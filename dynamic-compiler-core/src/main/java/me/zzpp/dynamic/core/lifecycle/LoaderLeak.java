@@ -0,0 +1,36 @@
+package me.zzpp.dynamic.core.lifecycle;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 已被替换或卸载、但在GC后仍未被回收的classloader
+ *
+ * @author zzpp
+ */
+@Data
+@AllArgsConstructor
+public class LoaderLeak {
+
+    /**
+     * loader中的class及其版本号，key:className
+     */
+    private final Map<String, Integer> generations;
+
+    /**
+     * loader的描述
+     */
+    private final String loader;
+
+    /**
+     * 距离被替换的时间，毫秒
+     */
+    private final long retiredMillis;
+
+    @Override
+    public String toString() {
+        return loader + " " + generations + " retired " + retiredMillis + "ms";
+    }
+}
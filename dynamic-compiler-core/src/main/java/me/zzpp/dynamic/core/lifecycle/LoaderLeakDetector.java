@@ -0,0 +1,202 @@
+package me.zzpp.dynamic.core.lifecycle;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import me.zzpp.dynamic.core.metrics.DynamicCompileListener;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * classloader版本跟踪与泄漏检测。
+ * 每次加载记录className的版本号，并以虚引用跟踪加载它的classloader；
+ * loader中的class全部被替换或卸载后，若超过宽限时间且期间发生过GC仍未被回收，视为泄漏
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class LoaderLeakDetector {
+
+    /**
+     * 宽限时间，毫秒
+     */
+    @Setter
+    private volatile long graceMillis;
+
+    private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+
+    /**
+     * 当前版本，key:className
+     */
+    private final Map<String, LoaderReference> current = new ConcurrentHashMap<>();
+
+    /**
+     * 全部未回收的loader，同时保持虚引用本身可达
+     */
+    private final Set<LoaderReference> tracked = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, AtomicInteger> generations = new ConcurrentHashMap<>();
+
+    /**
+     * 共用loader（命名空间）多次加载时合并到同一个跟踪记录，弱引用不影响loader回收
+     */
+    private final Map<ClassLoader, LoaderReference> byLoader = new WeakHashMap<>();
+
+    /**
+     * @param graceMillis loader被替换后允许存活的时间，毫秒
+     */
+    public LoaderLeakDetector(long graceMillis) {
+        this.graceMillis = graceMillis;
+    }
+
+    /**
+     * 记录新加载的class，同名class的旧版本被替换
+     *
+     * @param classNames loader中加载的className，批量编译时为多个
+     * @param loader     classloader
+     */
+    public synchronized void track(Collection<String> classNames, ClassLoader loader) {
+        LoaderReference reference = byLoader.get(loader);
+        if (null == reference) {
+            reference = new LoaderReference(loader, queue);
+            byLoader.put(loader, reference);
+            tracked.add(reference);
+        }
+        for (String className : classNames) {
+            reference.add(className, generations.computeIfAbsent(className, k -> new AtomicInteger()).incrementAndGet());
+        }
+        for (String className : classNames) {
+            LoaderReference old = current.put(className, reference);
+            if (null != old) {
+                old.retire(className);
+            }
+        }
+    }
+
+    /**
+     * class被卸载
+     *
+     * @param className className
+     */
+    public void retire(String className) {
+        LoaderReference old = current.remove(className);
+        if (null != old) {
+            old.retire(className);
+        }
+    }
+
+    /**
+     * 当前版本号，未加载过时为0
+     *
+     * @param className className
+     * @return 版本号
+     */
+    public int generation(String className) {
+        AtomicInteger generation = generations.get(className);
+        return null == generation ? 0 : generation.get();
+    }
+
+    /**
+     * 未被回收的loader个数，包含当前版本
+     *
+     * @return 个数
+     */
+    public int liveLoaders() {
+        expunge(DynamicCompileListener.NOOP);
+        return tracked.size();
+    }
+
+    /**
+     * 检测泄漏的loader，每个loader只报告一次。
+     * 虚引用只在GC后入队，宽限时间内未发生GC的loader不会被报告
+     *
+     * @param listener 监听，接收回收与泄漏事件
+     * @return 本次新发现的泄漏
+     */
+    public List<LoaderLeak> detect(DynamicCompileListener listener) {
+        expunge(listener);
+        long now = System.currentTimeMillis();
+        long gcCount = -1L;
+        List<LoaderLeak> leaks = new ArrayList<>();
+        for (LoaderReference reference : tracked) {
+            if (reference.reported || 0L == reference.retiredAt || now - reference.retiredAt < graceMillis) {
+                continue;
+            }
+            if (gcCount < 0L) {
+                gcCount = gcCount();
+            }
+            if (gcCount <= reference.retiredGcCount) {
+                continue;
+            }
+            reference.reported = true;
+            LoaderLeak leak = new LoaderLeak(Collections.unmodifiableMap(new HashMap<>(reference.generations)), reference.loader, now - reference.retiredAt);
+            log.warn("class loader leak detected, {} is still reachable after reload", leak);
+            listener.onLoaderLeak(leak);
+            leaks.add(leak);
+        }
+        return leaks;
+    }
+
+    private void expunge(DynamicCompileListener listener) {
+        Reference<? extends ClassLoader> reference;
+        while (null != (reference = queue.poll())) {
+            LoaderReference loaderReference = (LoaderReference) reference;
+            tracked.remove(loaderReference);
+            log.debug("class loader {} {} unloaded", loaderReference.loader, loaderReference.generations);
+            loaderReference.generations.forEach(listener::onUnloaded);
+        }
+    }
+
+    private static long gcCount() {
+        long count = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0L, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static final class LoaderReference extends PhantomReference<ClassLoader> {
+
+        private final Map<String, Integer> generations;
+
+        private final String loader;
+
+        /**
+         * 仍在使用中的className
+         */
+        private final Set<String> live;
+
+        private volatile long retiredAt;
+
+        private volatile long retiredGcCount;
+
+        private volatile boolean reported;
+
+        private LoaderReference(ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            this.generations = new ConcurrentHashMap<>();
+            this.loader = loader.toString();
+            this.live = ConcurrentHashMap.newKeySet();
+        }
+
+        private void add(String className, int generation) {
+            generations.put(className, generation);
+            live.add(className);
+            retiredAt = 0L;
+            reported = false;
+        }
+
+        private void retire(String className) {
+            if (live.remove(className) && live.isEmpty()) {
+                retiredGcCount = gcCount();
+                retiredAt = System.currentTimeMillis();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package me.zzpp.dynamic.core.metrics;
+
+import me.zzpp.dynamic.core.lifecycle.LoaderLeak;
+
+/**
+ * 动态编译过程监听，用于采集各阶段耗时、缓存命中、字节码大小与方法执行耗时。
+ * 所有方法默认为空实现，未设置监听时handler使用{@link #NOOP}，不进行计时
+ *
+ * @author zzpp
+ */
+public interface DynamicCompileListener {
+
+    /**
+     * 空实现
+     */
+    DynamicCompileListener NOOP = new DynamicCompileListener() {
+    };
+
+    /**
+     * 阶段完成
+     *
+     * @param className className，批量编译时为全部className以逗号拼接
+     * @param phase     阶段
+     * @param nanos     耗时，纳秒
+     */
+    default void onPhase(String className, Phase phase, long nanos) {
+    }
+
+    /**
+     * 编译结果缓存命中
+     *
+     * @param className className
+     */
+    default void onCacheHit(String className) {
+    }
+
+    /**
+     * 编译结果缓存未命中
+     *
+     * @param className className
+     */
+    default void onCacheMiss(String className) {
+    }
+
+    /**
+     * 编译完成
+     *
+     * @param className className
+     * @param classes   生成的class个数（包含内部类）
+     * @param bytes     字节码总大小
+     */
+    default void onCompiled(String className, int classes, long bytes) {
+    }
+
+    /**
+     * 编译失败
+     *
+     * @param className className
+     * @param e         异常
+     */
+    default void onCompileFailed(String className, Throwable e) {
+    }
+
+    /**
+     * class加载完成
+     *
+     * @param className className
+     * @param clz       加载后的class
+     * @param classes   loader中可加载的class个数（包含内部类）
+     */
+    default void onLoaded(String className, Class<?> clz, int classes) {
+    }
+
+    /**
+     * 方法执行完成
+     *
+     * @param clz        class对象
+     * @param methodName 方法名
+     * @param nanos      耗时，纳秒
+     * @param success    是否执行成功
+     */
+    default void onInvoke(Class<?> clz, String methodName, long nanos, boolean success) {
+    }
+
+    /**
+     * class的旧版本随classloader被回收
+     *
+     * @param className  className
+     * @param generation 被回收的版本号
+     */
+    default void onUnloaded(String className, int generation) {
+    }
+
+    /**
+     * 检测到classloader泄漏：class被替换或卸载后，GC后仍未被回收
+     *
+     * @param leak 泄漏的loader
+     */
+    default void onLoaderLeak(LoaderLeak leak) {
+    }
+
+    /**
+     * 加载阶段
+     */
+    enum Phase {
+
+        /**
+         * 解析源码：类名、包名与类名替换
+         */
+        Parse,
+
+        /**
+         * 源码写入临时文件并读回字节码，内存编译无此阶段
+         */
+        Write,
+
+        /**
+         * 调用编译器
+         */
+        Javac,
+
+        /**
+         * classloader定义class
+         */
+        Define,
+
+        /**
+         * 写入class缓存并释放旧版本实例
+         */
+        Link,
+        ;
+    }
+}
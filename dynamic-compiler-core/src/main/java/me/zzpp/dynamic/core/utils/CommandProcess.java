@@ -6,14 +6,18 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * 执行脚本工具类
@@ -23,6 +27,15 @@ import java.util.concurrent.Executors;
 @Slf4j
 public class CommandProcess {
 
+    /**
+     * 读取进程输出的共享线程池，守护线程，空闲后自动回收
+     */
+    private static final ExecutorService STREAM_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "command-process-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final String[] commandPrefix;
 
     private String charsets;
@@ -127,52 +140,43 @@ public class CommandProcess {
         return System.getProperties().getProperty("os.name").toUpperCase().contains("WINDOWS");
     }
 
-    private synchronized List<String> streamExport(Process process) {
-        ExecutorService executorService = Executors.newFixedThreadPool(2);
+    /**
+     * 标准错误在共享线程池中读取，标准输出在当前线程读取，返回时两者均已读完
+     */
+    private List<String> streamExport(Process process) throws InterruptedException {
         List<String> result = Collections.synchronizedList(new ArrayList<String>());
-        executorService.execute(() -> {
-            try (BufferedReader read = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.forName(charsets)))) {
-                String line;
-                while ((line = read.readLine()) != null) {
-                    result.add(line);
-                }
-            } catch (Exception ignore) {
-            }
-        });
-        executorService.execute(() -> {
-            try (BufferedReader readError = new BufferedReader(new InputStreamReader(process.getErrorStream(), Charset.forName(charsets)));) {
-                String lineError;
-                while ((lineError = readError.readLine()) != null) {
-                    result.add(lineError);
-                }
-            } catch (Exception ignore) {
-            }
-        });
+        Future<?> error = STREAM_EXECUTOR.submit(() -> readLines(process.getErrorStream(), result::add));
+        readLines(process.getInputStream(), result::add);
+        await(error);
         return result;
     }
 
-    private synchronized void streamExportStepping(Process process) {
-        ExecutorService executorService = Executors.newFixedThreadPool(2);
-        executorService.execute(() -> {
-            try (BufferedReader read = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.forName(charsets)))) {
-                String line;
-                while ((line = read.readLine()) != null) {
-                    System.out.println("process sout:"+line);
-                    log.info("process:{}",line);
-                }
-
-            } catch (Exception ignore) {
-            }
+    private void streamExportStepping(Process process) throws InterruptedException {
+        Future<?> error = STREAM_EXECUTOR.submit(() -> readLines(process.getErrorStream(), line -> {
+            System.err.println("process serr:" + line);
+            log.error("process:{}", line);
+        }));
+        readLines(process.getInputStream(), line -> {
+            System.out.println("process sout:" + line);
+            log.info("process:{}", line);
         });
-        executorService.execute(() -> {
-            try (BufferedReader readError = new BufferedReader(new InputStreamReader(process.getErrorStream(), Charset.forName(charsets)));) {
-                String lineError;
-                while ((lineError = readError.readLine()) != null) {
-                    System.err.println("process serr:"+lineError);
-                    log.error("process:{}",lineError);
-                }
-            } catch (Exception ignore) {
+        await(error);
+    }
+
+    private void readLines(InputStream in, Consumer<String> consumer) {
+        try (BufferedReader read = new BufferedReader(new InputStreamReader(in, Charset.forName(charsets)))) {
+            String line;
+            while ((line = read.readLine()) != null) {
+                consumer.accept(line);
             }
-        });
+        } catch (Exception ignore) {
+        }
+    }
+
+    private static void await(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException ignore) {
+        }
     }
 }
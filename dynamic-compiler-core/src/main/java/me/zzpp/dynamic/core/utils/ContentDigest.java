@@ -0,0 +1,162 @@
+package me.zzpp.dynamic.core.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * classpath条目的内容摘要，用于编译结果缓存与编译环境比较。
+ * jar取中央目录中每个条目的名称、crc与大小，不读取条目数据，内容不变时重新部署仍一致；
+ * 目录取其中文件的相对路径、大小与修改时间。jar的摘要按路径、大小与修改时间缓存
+ *
+ * @author zzpp
+ */
+public final class ContentDigest {
+
+    private static final Map<String, Cached> JARS = new ConcurrentHashMap<>();
+
+    private ContentDigest() {
+    }
+
+    /**
+     * 本地jar或目录的摘要
+     *
+     * @param file jar或目录
+     * @return 16进制摘要，不存在时为missing
+     */
+    public static String of(File file) {
+        if (file.isDirectory()) {
+            return directory(file.toPath());
+        } else if (!file.isFile()) {
+            return "missing";
+        }
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Cached cached = JARS.get(path);
+        if (null != cached && cached.length == length && cached.lastModified == lastModified) {
+            return cached.digest;
+        }
+        String digest;
+        try (MappedZipFile zip = new MappedZipFile(file)) {
+            digest = of(zip);
+        } catch (IOException e) {
+            //不是zip格式时退化为大小与修改时间
+            digest = length + "-" + lastModified;
+        }
+        JARS.put(path, new Cached(length, lastModified, digest));
+        return digest;
+    }
+
+    /**
+     * zip中央目录的摘要，嵌套jar的crc覆盖其全部内容
+     *
+     * @param zip zip
+     * @return 16进制摘要
+     */
+    public static String of(MappedZipFile zip) {
+        MessageDigest digest = sha256();
+        byte[] buf = new byte[12];
+        for (MappedZipFile.Entry entry : zip.entries()) {
+            digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+            putInt(buf, 0, (int) entry.getCrc());
+            putLong(buf, 4, entry.getSize());
+            digest.update(buf);
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * 整个classpath的摘要，长度固定，与条目数量无关
+     *
+     * @param classPaths jar或目录地址
+     * @return 16进制摘要
+     */
+    public static String of(List<String> classPaths) {
+        MessageDigest digest = sha256();
+        for (String classPath : classPaths) {
+            digest.update(classPath.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(of(new File(classPath)).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return hex(digest.digest());
+    }
+
+    private static String directory(Path root) {
+        MessageDigest digest = sha256();
+        byte[] buf = new byte[16];
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream.sorted().forEach(path -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        digest.update(root.relativize(path).toString().replace(File.separatorChar, '/').getBytes(StandardCharsets.UTF_8));
+                        putLong(buf, 0, attributes.size());
+                        putLong(buf, 8, attributes.lastModifiedTime().toMillis());
+                        digest.update(buf);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            //遍历失败时摘要包含当前时间，不会命中旧的编译结果
+            return "unreadable-" + System.nanoTime();
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void putInt(byte[] buf, int offset, int v) {
+        for (int i = 0; i < 4; i++) {
+            buf[offset + i] = (byte) (v >>> (i * 8));
+        }
+    }
+
+    private static void putLong(byte[] buf, int offset, long v) {
+        for (int i = 0; i < 8; i++) {
+            buf[offset + i] = (byte) (v >>> (i * 8));
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static final class Cached {
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final String digest;
+
+        private Cached(long length, long lastModified, String digest) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+}
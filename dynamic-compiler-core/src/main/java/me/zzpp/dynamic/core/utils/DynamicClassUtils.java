@@ -16,6 +16,23 @@ public class DynamicClassUtils {
 
     static final  String PACKAGE_NAME = "package?(.*?);";
 
+    /**
+     * 预编译的正则，扫描器无法识别时兜底
+     */
+    private static final Pattern REX_NAME_PATTERN = Pattern.compile(REX_NAME);
+
+    private static final Pattern PACKAGE_NAME_PATTERN = Pattern.compile(PACKAGE_NAME);
+
+    /**
+     * 扫描源码，一次遍历得到包名与顶层类型
+     *
+     * @param javaCode 源码
+     * @return 扫描结果
+     */
+    public static JavaSourceScanner.SourceInfo scan(String javaCode) {
+        return JavaSourceScanner.scan(javaCode);
+    }
+
     /**
      * 替换className
      *
@@ -24,8 +41,23 @@ public class DynamicClassUtils {
      * @return 替换后的源码
      */
     public static  String replaceClassName(String className, String javaCode) {
-        Pattern pattern = Pattern.compile(REX_NAME);
-        Matcher matcher = pattern.matcher(javaCode);
+        return replaceClassName(className, javaCode, scan(javaCode));
+    }
+
+    /**
+     * 替换className，使用已扫描的结果
+     *
+     * @param className className
+     * @param javaCode  源码
+     * @param info      源码的扫描结果
+     * @return 替换后的源码
+     */
+    public static String replaceClassName(String className, String javaCode, JavaSourceScanner.SourceInfo info) {
+        JavaSourceScanner.TypeDeclaration type = info.getPrimaryType();
+        if (null != type) {
+            return javaCode.substring(0, type.getNameStart()) + className + javaCode.substring(type.getNameEnd());
+        }
+        Matcher matcher = REX_NAME_PATTERN.matcher(javaCode);
         boolean find = matcher.find();
         if (find) {
             StringBuilder buffer = new StringBuilder();
@@ -44,11 +76,25 @@ public class DynamicClassUtils {
      * @return
      */
     public static String getClassName(String javaCode) {
-        Pattern pattern = Pattern.compile(REX_NAME);
-        Matcher matcher = pattern.matcher(javaCode);
+        return getClassName(javaCode, scan(javaCode));
+    }
+
+    /**
+     * 获取源码的class名称，使用已扫描的结果
+     *
+     * @param javaCode 源码
+     * @param info     源码的扫描结果
+     * @return class名称
+     */
+    public static String getClassName(String javaCode, JavaSourceScanner.SourceInfo info) {
+        JavaSourceScanner.TypeDeclaration type = info.getPrimaryType();
+        if (null != type) {
+            return type.getName();
+        }
+        Matcher matcher = REX_NAME_PATTERN.matcher(javaCode);
         boolean find = matcher.find(0);
         if (find) {
-            return matcher.group().replaceAll(REX_NAME, "$1").trim();
+            return matcher.group(1).trim();
         }
         throw new RuntimeException("java code 不合法");
     }
@@ -60,11 +106,24 @@ public class DynamicClassUtils {
      * @return
      */
     public static  String getPackageName(String javaCode) {
-        Pattern pattern = Pattern.compile(PACKAGE_NAME);
-        Matcher matcher = pattern.matcher(javaCode);
+        return getPackageName(javaCode, scan(javaCode));
+    }
+
+    /**
+     * 获取源码的package名称，使用已扫描的结果
+     *
+     * @param javaCode 源码
+     * @param info     源码的扫描结果
+     * @return package名称
+     */
+    public static String getPackageName(String javaCode, JavaSourceScanner.SourceInfo info) {
+        if (!"".equals(info.getPackageName()) || null != info.getPrimaryType()) {
+            return info.getPackageName();
+        }
+        Matcher matcher = PACKAGE_NAME_PATTERN.matcher(javaCode);
         boolean find = matcher.find(0);
         if (find) {
-            return matcher.group().replaceAll(PACKAGE_NAME, "$1").trim();
+            return matcher.group(1).trim();
         }
         return "";
     }
@@ -4,11 +4,18 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.Enumeration;
-import java.util.UUID;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
@@ -23,6 +30,15 @@ import java.util.zip.ZipOutputStream;
 @Slf4j
 public class FileUtils {
 
+    private static final String BOOT_INF_CLASSES = "BOOT-INF/classes/";
+
+    private static final String BOOT_INF_LIB = "BOOT-INF/lib/";
+
+    /**
+     * lib目录下记录上次提取的源jar信息
+     */
+    private static final String JAR_TO_LIB_STATE = ".jar-to-lib.properties";
+
     /**
      * 创建java文件
      *
@@ -54,56 +70,216 @@ public class FileUtils {
     }
 
     /**
-     * 从jar中提取lib包并存放到指定位置
+     * 读取java文件编译后的class（包含内部类）
      *
-     * @param jarPath
-     * @param destinationDir
-     * @return
+     * @param javaFile    java文件
+     * @param packageName 包名
+     * @param className   class名称（不含包名）
+     * @return key:全限定类名 value:字节码
+     * @throws IOException
+     */
+    public static Map<String, byte[]> readClassFiles(File javaFile, String packageName, String className) throws IOException {
+        File[] files = javaFile.getParentFile().listFiles((dir, name) -> name.equals(className + ".class")
+                || (name.startsWith(className + "$") && name.endsWith(".class")));
+        Map<String, byte[]> classBytes = new LinkedHashMap<>();
+        if (null != files) {
+            for (File file : files) {
+                String name = file.getName().substring(0, file.getName().length() - ".class".length());
+                classBytes.put(DynamicClassUtils.getClassName(packageName, name), Files.readAllBytes(file.toPath()));
+            }
+        }
+        return classBytes;
+    }
+
+    /**
+     * 从jar中提取lib包并存放到指定位置。
+     * 单次遍历中央目录：BOOT-INF/classes按原始压缩数据直接写入新jar，BOOT-INF/lib下的jar并行复制（未压缩时零拷贝）；
+     * 源jar未变化（大小与修改时间相同，或SHA-256相同）时跳过
+     *
+     * @param jarPath        spring boot jar
+     * @param destinationDir lib目录
+     * @return lib目录
      * @throws IOException
      */
     public static File jarToLib(String jarPath, String destinationDir) throws IOException {
         long start = System.currentTimeMillis();
         File jarFile = new File(jarPath);
         File desFile = new File(destinationDir);
-        String tempDir = System.getProperty("java.io.tmpdir");
-        File tempFileDir = new File(tempDir, UUID.randomUUID().toString());
-        boolean tempMkdirs = tempFileDir.mkdirs();
-        log.info("jarToLib temp path:【{}】 mkdirs:【{}】", tempFileDir.getAbsolutePath(), tempMkdirs);
-        if (desFile.exists()) {
-//            boolean delete = desFile.delete();
-//            log.info("jarToLib destinationDir  path:【{}】 delete【{}】", desFile.getAbsolutePath(), delete);
-        }
         boolean mkdirs = desFile.mkdirs();
         log.info("jarToLib destinationDir path:【{}】 mkdirs【{}】", desFile.getAbsolutePath(), mkdirs);
-        //复制jar
-        File tempJarFile = new File(tempDir, jarFile.getName());
-        File newJarFile = new File(desFile, jarFile.getName());
-        Files.copy(jarFile.toPath(), tempJarFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        log.debug("jarToLib copy {} to path:【{}】 success", tempJarFile.getName(), tempJarFile.getAbsolutePath());
-        //解压jar
-        unzipJar(tempJarFile.getAbsolutePath(), tempFileDir.getAbsolutePath());
-        //压缩原项目
-        File jarSourceFile = new File(tempFileDir, "BOOT-INF/classes");
-        toZip(jarSourceFile.getAbsolutePath(), newJarFile.getAbsolutePath());
-        //复制lib中的jar
-        File file = new File(tempFileDir, "BOOT-INF/lib");
-        if (file.exists() && file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (null != files) {
-                for (File listFile : files) {
-                    File newFile = new File(desFile, listFile.getName());
-                    Files.move(listFile.toPath(), newFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    log.debug("jarToLib copy {} to path:【{}】 success", newFile.getName(), newFile.getAbsolutePath());
+        File stateFile = new File(desFile, JAR_TO_LIB_STATE);
+        Properties state = readState(stateFile);
+        long length = jarFile.length();
+        long lastModified = jarFile.lastModified();
+        if (String.valueOf(length).equals(state.getProperty("length"))
+                && String.valueOf(lastModified).equals(state.getProperty("lastModified"))
+                && extracted(state, desFile)) {
+            log.info("jarToLib {} unchanged, skip, path:【{}】", jarFile.getName(), desFile.getAbsolutePath());
+            return desFile;
+        }
+        try (MappedZipFile zip = new MappedZipFile(jarFile)) {
+            String sha256 = zip.sha256();
+            Set<String> files = new LinkedHashSet<>();
+            if (!sha256.equals(state.getProperty("sha256")) || !extracted(state, desFile)) {
+                List<MappedZipFile.Entry> classes = new ArrayList<>();
+                List<MappedZipFile.Entry> libs = new ArrayList<>();
+                for (MappedZipFile.Entry entry : zip.entries()) {
+                    String name = entry.getName();
+                    if (name.startsWith(BOOT_INF_CLASSES) && name.length() > BOOT_INF_CLASSES.length()) {
+                        classes.add(entry);
+                    } else if (name.startsWith(BOOT_INF_LIB) && !entry.isDirectory() && name.indexOf('/', BOOT_INF_LIB.length()) < 0) {
+                        libs.add(entry);
+                    }
+                }
+                extract(zip, classes, libs, new File(desFile, jarFile.getName()), desFile, files);
+                //上次提取而本次不存在的jar
+                for (String old : state.getProperty("files", "").split(",")) {
+                    if (!old.isEmpty() && !files.contains(old)) {
+                        boolean delete = new File(desFile, old).delete();
+                        log.debug("jarToLib delete stale {} is {}", old, delete);
+                    }
                 }
+            } else {
+                files.addAll(Arrays.asList(state.getProperty("files").split(",")));
+                log.info("jarToLib {} content unchanged, skip, path:【{}】", jarFile.getName(), desFile.getAbsolutePath());
+            }
+            state.setProperty("source", jarFile.getAbsolutePath());
+            state.setProperty("length", String.valueOf(length));
+            state.setProperty("lastModified", String.valueOf(lastModified));
+            state.setProperty("sha256", sha256);
+            state.setProperty("files", String.join(",", files));
+            try (OutputStream os = Files.newOutputStream(stateFile.toPath())) {
+                state.store(os, "jarToLib");
             }
         }
-        boolean delete = tempFileDir.delete();
-        long end = System.currentTimeMillis();
-        long time = end - start;
+        long time = System.currentTimeMillis() - start;
         log.info("jarToLib copy lib to path:【{}】 time consuming:【{}ms】 success", desFile.getAbsolutePath(), time);
         return desFile;
     }
 
+    /**
+     * 并行复制lib，同时在当前线程写入classes jar
+     */
+    private static void extract(MappedZipFile zip, List<MappedZipFile.Entry> classes, List<MappedZipFile.Entry> libs,
+                                File classesJar, File desFile, Set<String> files) throws IOException {
+        int threads = Math.max(1, Math.min(libs.size(), Math.min(8, Runtime.getRuntime().availableProcessors())));
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "jar-to-lib-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(libs.size());
+            for (MappedZipFile.Entry entry : libs) {
+                String name = entry.getName().substring(BOOT_INF_LIB.length());
+                files.add(name);
+                futures.add(executor.submit(() -> {
+                    replace(new File(desFile, name), temp -> {
+                        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                            zip.transferTo(entry, channel);
+                        }
+                    });
+                    log.debug("jarToLib copy {} to path:【{}】 success", name, desFile.getAbsolutePath());
+                    return null;
+                }));
+            }
+            files.add(classesJar.getName());
+            replace(classesJar, temp -> {
+                try {
+                    zip.writeTo(classes, name -> name.substring(BOOT_INF_CLASSES.length()), temp);
+                } catch (IOException e) {
+                    //条目过多需要zip64时重新压缩
+                    log.warn("jarToLib raw copy classes failed, recompress, {}", e.getMessage());
+                    try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 1 << 16))) {
+                        for (MappedZipFile.Entry entry : classes) {
+                            zos.putNextEntry(new ZipEntry(entry.getName().substring(BOOT_INF_CLASSES.length())));
+                            try (InputStream in = zip.getInputStream(entry)) {
+                                byte[] buffer = new byte[1 << 16];
+                                int len;
+                                while ((len = in.read(buffer)) != -1) {
+                                    zos.write(buffer, 0, len);
+                                }
+                            }
+                            zos.closeEntry();
+                        }
+                    }
+                }
+            });
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("jarToLib interrupted");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            //复制线程结束后才能关闭zip
+            boolean interrupted = false;
+            while (!executor.isTerminated()) {
+                try {
+                    executor.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 写入临时文件后替换目标，避免读取到写了一半的jar
+     */
+    private static void replace(File target, FileAction writer) throws IOException {
+        File temp = new File(target.getParentFile(), target.getName() + "." + UUID.randomUUID().toString().substring(0, 8) + ".tmp");
+        try {
+            writer.write(temp);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static Properties readState(File stateFile) {
+        Properties state = new Properties();
+        if (stateFile.isFile()) {
+            try (InputStream is = Files.newInputStream(stateFile.toPath())) {
+                state.load(is);
+            } catch (IOException e) {
+                log.warn("jarToLib read state failed, path:{}, {}", stateFile, e.getMessage());
+            }
+        }
+        return state;
+    }
+
+    /**
+     * 上次提取的文件是否都还在
+     */
+    private static boolean extracted(Properties state, File desFile) {
+        String files = state.getProperty("files");
+        if (null == files || files.isEmpty()) {
+            return false;
+        }
+        for (String name : files.split(",")) {
+            if (!new File(desFile, name).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface FileAction {
+        void write(File file) throws IOException;
+    }
+
     /**
      * 解压jar文件到指定目录
      *
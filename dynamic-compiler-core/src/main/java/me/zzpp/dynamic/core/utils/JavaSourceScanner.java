@@ -0,0 +1,334 @@
+package me.zzpp.dynamic.core.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 轻量的java源码扫描器，一次遍历提取包名与顶层类型（class、interface、enum、record、@interface）及其位置。
+ * 跳过注释、字符串、字符与文本块，只识别大括号外的声明，不会被注释或字符串中的关键字干扰
+ *
+ * @author zzpp
+ */
+public final class JavaSourceScanner {
+
+    private final String source;
+
+    private final int length;
+
+    private int pos;
+
+    private JavaSourceScanner(String source) {
+        this.source = source;
+        this.length = source.length();
+    }
+
+    /**
+     * 扫描源码
+     *
+     * @param javaCode java源码
+     * @return 扫描结果
+     */
+    public static SourceInfo scan(String javaCode) {
+        return new JavaSourceScanner(javaCode).scan();
+    }
+
+    private SourceInfo scan() {
+        String packageName = "";
+        List<TypeDeclaration> types = new ArrayList<>();
+        int braceDepth = 0;
+        int parenDepth = 0;
+        boolean isPublic = false;
+        char previous = 0;
+        while (pos < length) {
+            char c = source.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+                continue;
+            }
+            if (c == '/' && pos + 1 < length && (source.charAt(pos + 1) == '/' || source.charAt(pos + 1) == '*')) {
+                skipComment();
+                continue;
+            }
+            if (c == '"') {
+                skipString();
+                previous = c;
+                continue;
+            }
+            if (c == '\'') {
+                skipChar();
+                previous = c;
+                continue;
+            }
+            if (Character.isJavaIdentifierStart(c)) {
+                int start = pos;
+                String word = identifier();
+                if (braceDepth == 0 && parenDepth == 0 && previous != '.') {
+                    if ("package".equals(word) && types.isEmpty()) {
+                        packageName = qualifiedName();
+                    } else if ("public".equals(word)) {
+                        isPublic = true;
+                    } else if (isTypeKeyword(word)) {
+                        skipTrivia();
+                        int nameStart = pos;
+                        if (pos < length && Character.isJavaIdentifierStart(source.charAt(pos))) {
+                            String name = identifier();
+                            String kind = previous == '@' ? "@interface" : word;
+                            types.add(new TypeDeclaration(kind, name, isPublic, start, nameStart, pos));
+                        }
+                        isPublic = false;
+                    }
+                }
+                previous = 'a';
+                continue;
+            }
+            switch (c) {
+                case '{':
+                    braceDepth++;
+                    break;
+                case '}':
+                    braceDepth--;
+                    if (braceDepth == 0) {
+                        isPublic = false;
+                    }
+                    break;
+                case '(':
+                    parenDepth++;
+                    break;
+                case ')':
+                    parenDepth--;
+                    break;
+                case ';':
+                    if (braceDepth == 0) {
+                        isPublic = false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            previous = c;
+            pos++;
+        }
+        return new SourceInfo(packageName, Collections.unmodifiableList(types));
+    }
+
+    private static boolean isTypeKeyword(String word) {
+        switch (word) {
+            case "class":
+            case "interface":
+            case "enum":
+            case "record":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private String identifier() {
+        int start = pos;
+        pos++;
+        while (pos < length && Character.isJavaIdentifierPart(source.charAt(pos))) {
+            pos++;
+        }
+        return source.substring(start, pos);
+    }
+
+    private String qualifiedName() {
+        StringBuilder builder = new StringBuilder();
+        while (pos < length) {
+            skipTrivia();
+            if (pos >= length) {
+                break;
+            }
+            char c = source.charAt(pos);
+            if (c == ';') {
+                pos++;
+                break;
+            }
+            if (Character.isJavaIdentifierStart(c)) {
+                builder.append(identifier());
+            } else if (c == '.') {
+                builder.append('.');
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return builder.toString();
+    }
+
+    private void skipTrivia() {
+        while (pos < length) {
+            char c = source.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '/' && pos + 1 < length && (source.charAt(pos + 1) == '/' || source.charAt(pos + 1) == '*')) {
+                skipComment();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void skipComment() {
+        if (source.charAt(pos + 1) == '/') {
+            int end = source.indexOf('\n', pos + 2);
+            pos = end < 0 ? length : end + 1;
+        } else {
+            int end = source.indexOf("*/", pos + 2);
+            pos = end < 0 ? length : end + 2;
+        }
+    }
+
+    private void skipString() {
+        if (source.startsWith("\"\"\"", pos)) {
+            //文本块
+            pos += 3;
+            while (pos < length) {
+                char c = source.charAt(pos);
+                if (c == '\\') {
+                    pos += 2;
+                } else if (source.startsWith("\"\"\"", pos)) {
+                    pos += 3;
+                    return;
+                } else {
+                    pos++;
+                }
+            }
+            return;
+        }
+        pos++;
+        while (pos < length) {
+            char c = source.charAt(pos);
+            if (c == '\\') {
+                pos += 2;
+            } else if (c == '"' || c == '\n') {
+                pos++;
+                return;
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    private void skipChar() {
+        pos++;
+        while (pos < length) {
+            char c = source.charAt(pos);
+            if (c == '\\') {
+                pos += 2;
+            } else if (c == '\'' || c == '\n') {
+                pos++;
+                return;
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * 扫描结果
+     */
+    public static final class SourceInfo {
+
+        private final String packageName;
+
+        private final List<TypeDeclaration> types;
+
+        private SourceInfo(String packageName, List<TypeDeclaration> types) {
+            this.packageName = packageName;
+            this.types = types;
+        }
+
+        /**
+         * 包名，默认包为空字符串
+         */
+        public String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         * 全部顶层类型，按源码顺序
+         */
+        public List<TypeDeclaration> getTypes() {
+            return types;
+        }
+
+        /**
+         * 主类型：第一个public顶层类型，没有public类型时为第一个顶层类型
+         *
+         * @return 主类型，没有类型声明时为null
+         */
+        public TypeDeclaration getPrimaryType() {
+            for (TypeDeclaration type : types) {
+                if (type.isPublic()) {
+                    return type;
+                }
+            }
+            return types.isEmpty() ? null : types.get(0);
+        }
+    }
+
+    /**
+     * 顶层类型声明
+     */
+    public static final class TypeDeclaration {
+
+        private final String kind;
+
+        private final String name;
+
+        private final boolean isPublic;
+
+        private final int start;
+
+        private final int nameStart;
+
+        private final int nameEnd;
+
+        private TypeDeclaration(String kind, String name, boolean isPublic, int start, int nameStart, int nameEnd) {
+            this.kind = kind;
+            this.name = name;
+            this.isPublic = isPublic;
+            this.start = start;
+            this.nameStart = nameStart;
+            this.nameEnd = nameEnd;
+        }
+
+        /**
+         * class、interface、enum、record、@interface
+         */
+        public String getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isPublic() {
+            return isPublic;
+        }
+
+        /**
+         * 关键字的起始位置
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * 类型名称的起始位置
+         */
+        public int getNameStart() {
+            return nameStart;
+        }
+
+        /**
+         * 类型名称的结束位置（不包含）
+         */
+        public int getNameEnd() {
+            return nameEnd;
+        }
+    }
+}
@@ -0,0 +1,667 @@
+package me.zzpp.dynamic.core.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * 基于内存映射的zip读取，只解析中央目录，条目数据按需从映射中读取。
+ * 未压缩的条目（如spring boot fat jar中BOOT-INF/lib下的jar）可以直接取得数据切片，嵌套jar无需解压即可再次作为zip读取。
+ * 超过2G的文件只映射中央目录，条目数据按需读取或单独映射；映射由GC释放，close后已取得的切片和嵌套zip仍可读取
+ *
+ * @author zzpp
+ */
+public class MappedZipFile implements Closeable {
+
+    private static final int LOC_SIG = 0x04034b50;
+
+    private static final int CEN_SIG = 0x02014b50;
+
+    private static final int END_SIG = 0x06054b50;
+
+    private static final int ZIP64_LOC_SIG = 0x07064b50;
+
+    private static final int ZIP64_END_SIG = 0x06064b50;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * 大文件中映射范围之外不超过该大小的数据直接读取，更大的单独映射
+     */
+    private static final int MAX_READ = 1 << 20;
+
+    private final String name;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * buffer起始位置在文件中的偏移，超过2G的文件从中央目录开始映射
+     */
+    private final long base;
+
+    private volatile boolean closed;
+
+    /**
+     * 从文件映射时保留通道，未压缩条目可以直接transferTo
+     */
+    private final FileChannel channel;
+
+    private final Map<String, Entry> entries;
+
+    /**
+     * 映射zip文件
+     *
+     * @param file zip文件
+     * @throws IOException 读取失败或格式错误
+     */
+    public MappedZipFile(File file) throws IOException {
+        this.name = file.getAbsolutePath();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            this.base = size > Integer.MAX_VALUE ? centralDirectoryOffset(channel, size, name) : 0L;
+            if (size - base > Integer.MAX_VALUE) {
+                throw new IOException("zip central directory too large: " + name);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, size - base).order(ByteOrder.LITTLE_ENDIAN);
+            this.entries = readCentralDirectory();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 从内存中的zip数据读取，如外层jar中未压缩条目的切片
+     *
+     * @param name   名称
+     * @param buffer zip数据
+     * @throws IOException 格式错误
+     */
+    public MappedZipFile(String name, ByteBuffer buffer) throws IOException {
+        this.name = name;
+        this.channel = null;
+        this.base = 0L;
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.entries = readCentralDirectory();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 全部条目，按中央目录顺序
+     */
+    public Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * @param name 条目名称
+     * @return 条目，不存在时返回null
+     */
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * 条目原始数据（未解压）
+     *
+     * @param entry 条目
+     * @return 只读切片
+     */
+    public ByteBuffer rawData(Entry entry) {
+        return region(dataOffset(entry), entry.compressedSize).asReadOnlyBuffer();
+    }
+
+    /**
+     * 读取条目内容
+     *
+     * @param entry 条目
+     * @return 解压后的输入流
+     * @throws IOException 不支持的压缩方式
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        //超过2G的条目无法映射，从通道读取
+        InputStream raw = entry.compressedSize > Integer.MAX_VALUE && null != channel
+                ? new ChannelInputStream(channel, dataOffset(entry), entry.compressedSize)
+                : new ByteBufferInputStream(rawData(entry));
+        if (ZipEntry.STORED == entry.method) {
+            return raw;
+        } else if (ZipEntry.DEFLATED == entry.method) {
+            //nowrap模式需要在末尾补一个空字节
+            Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1])), inflater, 8192) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+        }
+        throw new IOException("unsupported compression method " + entry.method + " of " + entry.name + " in " + name);
+    }
+
+    /**
+     * 读取条目全部内容
+     *
+     * @param entry 条目
+     * @return 解压后的字节
+     * @throws IOException 读取失败
+     */
+    public byte[] read(Entry entry) throws IOException {
+        if (ZipEntry.STORED == entry.method) {
+            ByteBuffer data = rawData(entry);
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            return bytes;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(32, entry.size));
+        try (InputStream in = getInputStream(entry)) {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                out.write(buf, 0, len);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 作为zip读取嵌套的条目，未压缩时（如BOOT-INF/lib下的jar）直接使用切片，不复制数据
+     *
+     * @param entry 条目
+     * @return 嵌套zip
+     * @throws IOException 格式错误
+     */
+    public MappedZipFile nested(Entry entry) throws IOException {
+        if (ZipEntry.STORED != entry.method) {
+            return new MappedZipFile(name + "!/" + entry.name, ByteBuffer.wrap(read(entry)));
+        }
+        return new MappedZipFile(name + "!/" + entry.name, rawData(entry));
+    }
+
+    /**
+     * 将条目解压后的内容写入目标，未压缩条目从文件映射时使用零拷贝
+     *
+     * @param entry  条目
+     * @param target 目标
+     * @throws IOException 写入失败
+     */
+    public void transferTo(Entry entry, WritableByteChannel target) throws IOException {
+        if (ZipEntry.STORED == entry.method) {
+            if (null != channel) {
+                long position = dataOffset(entry);
+                long end = position + entry.compressedSize;
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, target);
+                }
+            } else {
+                ByteBuffer data = rawData(entry);
+                while (data.hasRemaining()) {
+                    target.write(data);
+                }
+            }
+            return;
+        }
+        try (InputStream in = getInputStream(entry)) {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            int len;
+            while ((len = in.read(buf.array())) != -1) {
+                buf.limit(len).position(0);
+                while (buf.hasRemaining()) {
+                    target.write(buf);
+                }
+                buf.clear();
+            }
+        }
+    }
+
+    /**
+     * 整个zip的SHA-256
+     *
+     * @return 16进制摘要
+     */
+    public String sha256() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        if (0 == base) {
+            digest.update(buffer.duplicate());
+        } else {
+            try (InputStream in = new ChannelInputStream(channel, 0, channel.size())) {
+                byte[] buf = new byte[1 << 16];
+                int len;
+                while ((len = in.read(buf)) != -1) {
+                    digest.update(buf, 0, len);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 将条目按原始压缩数据写入新的zip，不重新压缩
+     *
+     * @param entries 条目，需要来自当前zip
+     * @param rename  条目在新zip中的名称
+     * @param target  新zip
+     * @throws IOException 写入失败，条目过大需要zip64时也会失败
+     */
+    public void writeTo(Collection<Entry> entries, Function<String, String> rename, File target) throws IOException {
+        if (entries.size() >= 0xFFFF) {
+            throw new IOException("too many entries for " + target);
+        }
+        ByteArrayOutputStream central = new ByteArrayOutputStream();
+        LittleEndianOutput cen = new LittleEndianOutput(central);
+        long offset = 0;
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(target.toPath()), 1 << 16)) {
+            LittleEndianOutput loc = new LittleEndianOutput(os);
+            for (Entry entry : entries) {
+                if (entry.compressedSize >= ZIP64_MAGIC || entry.size >= ZIP64_MAGIC || offset >= ZIP64_MAGIC) {
+                    throw new IOException("entry too large for " + target + ": " + entry.name);
+                }
+                byte[] nameBytes = rename.apply(entry.name).getBytes(StandardCharsets.UTF_8);
+                //general purpose flag只保留utf-8标记，大小与crc写在本地头中
+                int flag = 0x800;
+                loc.writeInt(LOC_SIG);
+                loc.writeShort(20);
+                loc.writeShort(flag);
+                loc.writeShort(entry.method);
+                loc.writeInt((int) entry.dosTime);
+                loc.writeInt((int) entry.crc);
+                loc.writeInt((int) entry.compressedSize);
+                loc.writeInt((int) entry.size);
+                loc.writeShort(nameBytes.length);
+                loc.writeShort(0);
+                loc.write(nameBytes);
+                ByteBuffer data = rawData(entry);
+                if (data.hasArray()) {
+                    os.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                } else {
+                    byte[] buf = new byte[Math.min(data.remaining(), 1 << 16)];
+                    while (data.hasRemaining()) {
+                        int len = Math.min(buf.length, data.remaining());
+                        data.get(buf, 0, len);
+                        os.write(buf, 0, len);
+                    }
+                }
+                cen.writeInt(CEN_SIG);
+                cen.writeShort(20);
+                cen.writeShort(20);
+                cen.writeShort(flag);
+                cen.writeShort(entry.method);
+                cen.writeInt((int) entry.dosTime);
+                cen.writeInt((int) entry.crc);
+                cen.writeInt((int) entry.compressedSize);
+                cen.writeInt((int) entry.size);
+                cen.writeShort(nameBytes.length);
+                cen.writeShort(0);
+                cen.writeShort(0);
+                cen.writeShort(0);
+                cen.writeShort(0);
+                cen.writeInt(0);
+                cen.writeInt((int) offset);
+                cen.write(nameBytes);
+                offset += 30 + nameBytes.length + entry.compressedSize;
+            }
+            if (offset >= ZIP64_MAGIC) {
+                throw new IOException("zip too large: " + target);
+            }
+            central.writeTo(os);
+            loc.writeInt(END_SIG);
+            loc.writeShort(0);
+            loc.writeShort(0);
+            loc.writeShort(entries.size());
+            loc.writeShort(entries.size());
+            loc.writeInt(central.size());
+            loc.writeInt((int) offset);
+            loc.writeShort(0);
+        }
+    }
+
+    /**
+     * 关闭文件，之后不能再从本对象读取；映射不主动释放，已取得的切片、嵌套zip和输入流可能仍在使用，由GC回收
+     */
+    @Override
+    public void close() throws IOException {
+        if (null == channel || closed) {
+            return;
+        }
+        closed = true;
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private long dataOffset(Entry entry) {
+        long offset = entry.dataOffset;
+        if (offset < 0) {
+            ByteBuffer header = region(entry.localHeaderOffset, 30);
+            if (header.getInt(0) != LOC_SIG) {
+                throw new IllegalStateException("invalid local header of " + entry.name + " in " + name);
+            }
+            offset = entry.localHeaderOffset + 30L + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            entry.dataOffset = offset;
+        }
+        return offset;
+    }
+
+    /**
+     * 文件中的一段数据：位于映射范围内时取切片，否则较小的直接读取，较大的单独映射
+     *
+     * @param offset 文件中的偏移
+     * @param length 长度
+     * @return 小端序的数据
+     */
+    private ByteBuffer region(long offset, long length) {
+        if (closed) {
+            throw new IllegalStateException(name + " closed");
+        }
+        long start = offset - base;
+        if (start >= 0 && start + length <= buffer.limit()) {
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.limit((int) (start + length)).position((int) start);
+            return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (null == channel || length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("data out of range or too large at " + offset + " length " + length + " in " + name);
+        }
+        try {
+            if (length <= MAX_READ) {
+                return read(channel, offset, (int) length);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 超过2G的文件只映射中央目录，先从文件末尾读取其位置
+     */
+    private static long centralDirectoryOffset(FileChannel channel, long size, String name) throws IOException {
+        int tailLength = (int) Math.min(size, 22 + 0xFFFF + 20);
+        ByteBuffer tail = read(channel, size - tailLength, tailLength);
+        int end = findEnd(tail, name);
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long cenOffset = tail.getInt(end + 16) & ZIP64_MAGIC;
+        int locator = end - 20;
+        if ((count == 0xFFFF || cenOffset == ZIP64_MAGIC) && locator >= 0 && tail.getInt(locator) == ZIP64_LOC_SIG) {
+            ByteBuffer zip64End = read(channel, tail.getLong(locator + 8), 56);
+            if (zip64End.getInt(0) != ZIP64_END_SIG) {
+                throw new IOException("invalid zip64 end header in " + name);
+            }
+            cenOffset = zip64End.getLong(48);
+        }
+        if (cenOffset < 0 || cenOffset >= size) {
+            throw new IOException("invalid central directory offset in " + name);
+        }
+        return cenOffset;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, position + bytes.position()) < 0) {
+                throw new EOFException("unexpected end of file at " + (position + bytes.position()));
+            }
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    private Map<String, Entry> readCentralDirectory() throws IOException {
+        int end = findEnd(buffer, name);
+        long count = buffer.getShort(end + 10) & 0xFFFF;
+        long cenOffset = buffer.getInt(end + 16) & ZIP64_MAGIC;
+        if (count == 0xFFFF || cenOffset == ZIP64_MAGIC) {
+            int locator = end - 20;
+            if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOC_SIG) {
+                int zip64End = (int) (buffer.getLong(locator + 8) - base);
+                if (buffer.getInt(zip64End) != ZIP64_END_SIG) {
+                    throw new IOException("invalid zip64 end header in " + name);
+                }
+                count = buffer.getLong(zip64End + 32);
+                cenOffset = buffer.getLong(zip64End + 48);
+            }
+        }
+        Map<String, Entry> entries = new LinkedHashMap<>((int) Math.min(count * 4 / 3 + 1, 1 << 20));
+        int pos = (int) (cenOffset - base);
+        for (long i = 0; i < count; i++) {
+            if (buffer.getInt(pos) != CEN_SIG) {
+                throw new IOException("invalid central directory header in " + name);
+            }
+            int method = buffer.getShort(pos + 10) & 0xFFFF;
+            long dosTime = buffer.getInt(pos + 12) & ZIP64_MAGIC;
+            long crc = buffer.getInt(pos + 16) & ZIP64_MAGIC;
+            long compressedSize = buffer.getInt(pos + 20) & ZIP64_MAGIC;
+            long size = buffer.getInt(pos + 24) & ZIP64_MAGIC;
+            int nameLength = buffer.getShort(pos + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(pos + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(pos + 32) & 0xFFFF;
+            long localHeaderOffset = buffer.getInt(pos + 42) & ZIP64_MAGIC;
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(pos + 46);
+            duplicate.get(nameBytes);
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                //zip64扩展字段，按顺序只包含值为0xFFFFFFFF的项
+                int extra = pos + 46 + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = buffer.getShort(extra) & 0xFFFF;
+                    int length = buffer.getShort(extra + 2) & 0xFFFF;
+                    if (id == 0x0001) {
+                        int value = extra + 4;
+                        if (size == ZIP64_MAGIC) {
+                            size = buffer.getLong(value);
+                            value += 8;
+                        }
+                        if (compressedSize == ZIP64_MAGIC) {
+                            compressedSize = buffer.getLong(value);
+                            value += 8;
+                        }
+                        if (localHeaderOffset == ZIP64_MAGIC) {
+                            localHeaderOffset = buffer.getLong(value);
+                        }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+            String entryName = new String(nameBytes, StandardCharsets.UTF_8);
+            entries.put(entryName, new Entry(entryName, method, dosTime, crc, compressedSize, size, localHeaderOffset));
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static int findEnd(ByteBuffer buffer, String name) throws IOException {
+        int min = Math.max(0, buffer.limit() - 22 - 0xFFFF);
+        for (int i = buffer.limit() - 22; i >= min; i--) {
+            if (buffer.getInt(i) == END_SIG) {
+                return i;
+            }
+        }
+        throw new IOException("zip end header not found in " + name);
+    }
+
+    /**
+     * zip条目
+     */
+    public static final class Entry {
+
+        private final String name;
+
+        private final int method;
+
+        private final long dosTime;
+
+        private final long crc;
+
+        private final long compressedSize;
+
+        private final long size;
+
+        private final long localHeaderOffset;
+
+        private volatile long dataOffset = -1;
+
+        private Entry(String name, int method, long dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * 从通道的指定位置读取，不改变通道的position
+     */
+    private static final class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private final long end;
+
+        private long position;
+
+        private ChannelInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n < 0) {
+                return -1;
+            }
+            position += n;
+            return n;
+        }
+    }
+
+    /**
+     * zip头为小端序
+     */
+    private static final class LittleEndianOutput {
+
+        private final OutputStream out;
+
+        private LittleEndianOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        private void writeShort(int v) throws IOException {
+            out.write(v & 0xFF);
+            out.write((v >>> 8) & 0xFF);
+        }
+
+        private void writeInt(int v) throws IOException {
+            writeShort(v & 0xFFFF);
+            writeShort((v >>> 16) & 0xFFFF);
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package me.zzpp.dynamic.core.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * MappedZipFile读写往返：未压缩条目、压缩条目、嵌套jar、按原始数据重写、关闭后读取
+ *
+ * @author zzpp
+ */
+public class MappedZipFileTest {
+
+    private static final byte[] STORED = "stored entry content".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] DEFLATED = repeat("deflated entry content ", 200);
+
+    private static final byte[] NESTED_CLASS = "nested class bytes".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        File dir = Files.createTempDirectory("mapped-zip-test").toFile();
+        try {
+            File jar = new File(dir, "outer.jar");
+            writeOuter(jar);
+            stored(jar);
+            deflated(jar);
+            nested(jar);
+            rewrite(jar, new File(dir, "rewrite.jar"));
+            closed(jar);
+            System.out.println("MappedZipFileTest passed");
+        } finally {
+            File[] files = dir.listFiles();
+            if (null != files) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    private static void stored(File jar) throws IOException {
+        try (MappedZipFile zip = new MappedZipFile(jar)) {
+            MappedZipFile.Entry entry = zip.getEntry("a/stored.txt");
+            check(null != entry, "stored entry not found");
+            check(ZipEntry.STORED == entry.getMethod(), "stored entry method");
+            check(entry.getCrc() == crc(STORED), "stored entry crc");
+            check(Arrays.equals(STORED, zip.read(entry)), "stored read");
+            check(Arrays.equals(STORED, readAll(zip.getInputStream(entry))), "stored input stream");
+            ByteBuffer raw = zip.rawData(entry);
+            check(raw.remaining() == STORED.length, "stored raw data length");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            zip.transferTo(entry, Channels.newChannel(out));
+            check(Arrays.equals(STORED, out.toByteArray()), "stored transferTo");
+        }
+    }
+
+    private static void deflated(File jar) throws IOException {
+        try (MappedZipFile zip = new MappedZipFile(jar)) {
+            MappedZipFile.Entry entry = zip.getEntry("a/deflated.txt");
+            check(null != entry, "deflated entry not found");
+            check(ZipEntry.DEFLATED == entry.getMethod(), "deflated entry method");
+            check(entry.getCompressedSize() < entry.getSize(), "deflated entry compressed");
+            check(entry.getSize() == DEFLATED.length, "deflated entry size");
+            check(Arrays.equals(DEFLATED, zip.read(entry)), "deflated read");
+            check(Arrays.equals(DEFLATED, readAll(zip.getInputStream(entry))), "deflated input stream");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            zip.transferTo(entry, Channels.newChannel(out));
+            check(Arrays.equals(DEFLATED, out.toByteArray()), "deflated transferTo");
+        }
+    }
+
+    private static void nested(File jar) throws IOException {
+        try (MappedZipFile zip = new MappedZipFile(jar)) {
+            //未压缩的嵌套jar直接使用切片，压缩的先解压
+            for (String name : new String[]{"BOOT-INF/lib/stored.jar", "BOOT-INF/lib/deflated.jar"}) {
+                MappedZipFile.Entry entry = zip.getEntry(name);
+                check(null != entry, name + " not found");
+                MappedZipFile nested = zip.nested(entry);
+                check(nested.getName().endsWith("!/" + name), name + " nested name");
+                MappedZipFile.Entry inner = nested.getEntry("b/C.class");
+                check(null != inner, name + " inner entry not found");
+                check(Arrays.equals(NESTED_CLASS, nested.read(inner)), name + " inner read");
+                check(Arrays.equals(DEFLATED, nested.read(nested.getEntry("b/deflated.txt"))), name + " inner deflated read");
+            }
+        }
+    }
+
+    private static void rewrite(File jar, File target) throws IOException {
+        try (MappedZipFile zip = new MappedZipFile(jar)) {
+            zip.writeTo(zip.entries(), name -> "copy/" + name, target);
+        }
+        try (ZipFile copy = new ZipFile(target)) {
+            check(Arrays.equals(STORED, readAll(copy.getInputStream(copy.getEntry("copy/a/stored.txt")))), "rewrite stored");
+            check(Arrays.equals(DEFLATED, readAll(copy.getInputStream(copy.getEntry("copy/a/deflated.txt")))), "rewrite deflated");
+            check(copy.size() == 4, "rewrite entry count");
+        }
+        try (MappedZipFile copy = new MappedZipFile(target)) {
+            check(copy.sha256().length() == 64, "rewrite sha256");
+            check(Arrays.equals(DEFLATED, copy.read(copy.getEntry("copy/a/deflated.txt"))), "rewrite mapped read");
+        }
+    }
+
+    private static void closed(File jar) throws IOException {
+        MappedZipFile zip = new MappedZipFile(jar);
+        MappedZipFile.Entry entry = zip.getEntry("a/stored.txt");
+        MappedZipFile nested = zip.nested(zip.getEntry("BOOT-INF/lib/stored.jar"));
+        zip.close();
+        zip.close();
+        try {
+            zip.read(entry);
+            throw new AssertionError("read after close");
+        } catch (IllegalStateException expected) {
+            //已关闭
+        }
+        //映射由GC释放，外层关闭后嵌套jar仍可读取
+        check(Arrays.equals(NESTED_CLASS, nested.read(nested.getEntry("b/C.class"))), "nested read after outer close");
+    }
+
+    private static void writeOuter(File jar) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            putStored(out, "a/stored.txt", STORED);
+            putDeflated(out, "a/deflated.txt", DEFLATED);
+            putStored(out, "BOOT-INF/lib/stored.jar", innerJar());
+            putDeflated(out, "BOOT-INF/lib/deflated.jar", innerJar());
+        }
+    }
+
+    private static byte[] innerJar() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            putStored(out, "b/C.class", NESTED_CLASS);
+            putDeflated(out, "b/deflated.txt", DEFLATED);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void putStored(ZipOutputStream out, String name, byte[] bytes) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes.length);
+        entry.setCompressedSize(bytes.length);
+        entry.setCrc(crc(bytes));
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private static void putDeflated(ZipOutputStream out, String name, byte[] bytes) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = input.read(buf)) != -1) {
+                out.write(buf, 0, len);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] repeat(String s, int times) {
+        return String.join("", Collections.nCopies(times, s)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
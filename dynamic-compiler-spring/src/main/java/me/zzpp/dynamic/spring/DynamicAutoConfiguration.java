@@ -1,14 +1,107 @@
 package me.zzpp.dynamic.spring;
 
 
+import me.zzpp.dynamic.core.cache.ByteCodeCache;
+import me.zzpp.dynamic.core.compiler.CompileExecutor;
+import me.zzpp.dynamic.core.compiler.JavacWorkerPool;
+import me.zzpp.dynamic.core.handler.DefaultDynamicClassHandlerImpl;
+import me.zzpp.dynamic.core.handler.DynamicClassHandler;
+import me.zzpp.dynamic.core.metrics.DynamicCompileListener;
+import me.zzpp.dynamic.spring.handler.DynamicClassHandlerPool;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
+ * 按dynamic.compiler配置创建handler池，编译线程池、javac工作进程池与字节码缓存在池内的handler之间共用
+ *
  * @author zzpp
  * @date 2021/4/2.
  */
 @Configuration
 @ComponentScan("me.zzpp.dynamic.spring")
+@EnableConfigurationProperties(DynamicCompilerProperties.class)
 public class DynamicAutoConfiguration {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public CompileExecutor dynamicCompileExecutor(DynamicCompilerProperties properties) {
+        DynamicCompilerProperties.Executor executor = properties.getExecutor();
+        return new CompileExecutor(Math.max(1, executor.getThreads()), Math.max(1, executor.getQueueCapacity()), executor.getTimeoutMillis());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "dynamic.compiler", name = "type", havingValue = "Worker")
+    public JavacWorkerPool javacWorkerPool(DynamicCompilerProperties properties) {
+        DynamicCompilerProperties.Worker worker = properties.getWorker();
+        String java = worker.getJava();
+        if (null == java && null != properties.getCmd()) {
+            //与handler的默认进程池一致，使用javac所在目录的java
+            File cmd = new File(properties.getCmd());
+            java = cmd.isDirectory() ? cmd.getAbsolutePath() : cmd.getAbsoluteFile().getParent();
+        }
+        return new JavacWorkerPool(java, worker.getMaxWorkers(), worker.getMaxCompiles(), worker.getTimeoutMillis(), worker.getJvmOptions());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "dynamic.compiler.byte-code-cache", name = "dir")
+    public ByteCodeCache byteCodeCache(DynamicCompilerProperties properties) {
+        DynamicCompilerProperties.ByteCode byteCode = properties.getByteCodeCache();
+        return new ByteCodeCache(new File(byteCode.getDir()), byteCode.getMaxEntries(), byteCode.getMaxBytes());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public DynamicClassHandlerPool dynamicClassHandlerPool(DynamicCompilerProperties properties, CompileExecutor compileExecutor,
+                                                           ObjectProvider<JavacWorkerPool> workerPool, ObjectProvider<ByteCodeCache> byteCodeCache,
+                                                           ObjectProvider<DynamicCompileListener> compileListener) {
+        List<DynamicClassHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, properties.getHandlers()); i++) {
+            DynamicClassHandler handler = new DefaultDynamicClassHandlerImpl(properties.getType(), properties.getCmd());
+            handler.setCache(properties.isCache());
+            handler.setInstanceScope(properties.getInstanceScope());
+            DynamicCompilerProperties.Lib lib = properties.getLib();
+            if (null != lib.getPaths()) {
+                handler.setClassLibPaths(lib.getPaths());
+            }
+            if (null != lib.getDir()) {
+                handler.setClassLibFile(new File(lib.getDir()));
+            }
+            if (null != lib.getJar()) {
+                handler.setClassLibJar(new File(lib.getJar()));
+            }
+            handler.setHostClassPath(lib.isHostClassPath());
+            handler.setClassPathIndex(lib.isClassPathIndex());
+            handler.setCompileExecutor(compileExecutor);
+            workerPool.ifAvailable(handler::setWorkerPool);
+            byteCodeCache.ifAvailable(handler::setByteCodeCache);
+            compileListener.ifUnique(handler::setCompileListener);
+            handlers.add(handler);
+        }
+        DynamicClassHandlerPool pool = new DynamicClassHandlerPool(handlers);
+        DynamicCompilerProperties.Warmup warmup = properties.getWarmup();
+        if (warmup.isEnabled()) {
+            Runnable task = () -> {
+                workerPool.ifAvailable(workers -> workers.prestart(warmup.getWorkers()));
+                pool.warmup();
+            };
+            if (warmup.isAsync()) {
+                CompletableFuture.runAsync(task);
+            } else {
+                task.run();
+            }
+        }
+        return pool;
+    }
 }
@@ -0,0 +1,180 @@
+package me.zzpp.dynamic.spring;
+
+import lombok.Data;
+import me.zzpp.dynamic.core.handler.DynamicClassHandler;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 动态编译配置，前缀dynamic.compiler
+ *
+ * @author zzpp
+ */
+@Data
+@ConfigurationProperties("dynamic.compiler")
+public class DynamicCompilerProperties {
+
+    /**
+     * 编译方式，默认内存编译，Cmd方式每次编译都会启动javac进程
+     */
+    private DynamicClassHandler.CompilerType type = DynamicClassHandler.CompilerType.Memory;
+
+    /**
+     * javac命令地址，Cmd方式使用；Worker方式未设置worker.java时使用其所在目录的java
+     */
+    private String cmd;
+
+    /**
+     * handler个数，不同租户的class缓存与classloader相互隔离，可以并行编译；编译线程池、工作进程池与字节码缓存共用
+     */
+    private int handlers = 1;
+
+    /**
+     * 是否启用class缓存
+     */
+    private boolean cache = true;
+
+    /**
+     * 非静态方法执行时的默认实例作用域
+     */
+    private DynamicClassHandler.InstanceScope instanceScope = DynamicClassHandler.InstanceScope.Prototype;
+
+    private Lib lib = new Lib();
+
+    private ByteCode byteCodeCache = new ByteCode();
+
+    private Executor executor = new Executor();
+
+    private Worker worker = new Worker();
+
+    private Warmup warmup = new Warmup();
+
+    /**
+     * 编译classpath，优先级 jar > hostClassPath > dir > paths
+     */
+    @Data
+    public static class Lib {
+
+        /**
+         * lib地址
+         */
+        private List<String> paths;
+
+        /**
+         * lib目录，如jarToLib解压的目录
+         */
+        private String dir;
+
+        /**
+         * spring boot可执行jar
+         */
+        private String jar;
+
+        /**
+         * 以宿主classloader层级作为classpath
+         */
+        private boolean hostClassPath;
+
+        /**
+         * 为lib目录建立classpath索引
+         */
+        private boolean classPathIndex;
+    }
+
+    /**
+     * 编译结果缓存，设置dir后启用
+     */
+    @Data
+    public static class ByteCode {
+
+        /**
+         * 持久化目录
+         */
+        private String dir;
+
+        /**
+         * 最大缓存条数
+         */
+        private int maxEntries = 1024;
+
+        /**
+         * 最大缓存字节数
+         */
+        private long maxBytes = 64L * 1024 * 1024;
+    }
+
+    /**
+     * 异步编译线程池
+     */
+    @Data
+    public static class Executor {
+
+        /**
+         * 编译线程数，默认cpu核数
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 等待队列长度，队列满时拒绝
+         */
+        private int queueCapacity = 256;
+
+        /**
+         * 默认超时时间，小于等于0不超时
+         */
+        private long timeoutMillis = TimeUnit.SECONDS.toMillis(60);
+    }
+
+    /**
+     * javac工作进程池，Worker方式使用
+     */
+    @Data
+    public static class Worker {
+
+        /**
+         * java命令或所在目录
+         */
+        private String java;
+
+        /**
+         * 最大进程数，默认cpu核数的一半
+         */
+        private int maxWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        /**
+         * 每个进程最多编译次数
+         */
+        private int maxCompiles = 500;
+
+        /**
+         * 单次编译超时时间
+         */
+        private long timeoutMillis = TimeUnit.SECONDS.toMillis(60);
+
+        /**
+         * 工作进程的jvm参数
+         */
+        private List<String> jvmOptions;
+    }
+
+    /**
+     * 启动预热：每个handler编译一次，提前加载javac与完成jit，首次编译不再慢
+     */
+    @Data
+    public static class Warmup {
+
+        private boolean enabled = true;
+
+        /**
+         * 是否在后台预热，不阻塞应用启动
+         */
+        private boolean async = true;
+
+        /**
+         * Worker方式预先启动的进程数
+         */
+        private int workers = 1;
+    }
+}
@@ -2,11 +2,15 @@ package me.zzpp.dynamic.spring.handler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.CachedIntrospectionResults;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
 
 /**
  * 动态编译获取spring环境
@@ -24,10 +28,62 @@ public class DynamicApplicationContext {
     public void registerBean(String beanName, Class<?> clz) {
         AbstractBeanDefinition beanDefinition = BeanDefinitionBuilder.genericBeanDefinition(clz).getBeanDefinition();
         load().registerBeanDefinition(beanName, beanDefinition);
+        applicationContext.publishEvent(new DynamicBeanEvent(this, beanName, DynamicBeanEvent.Type.Registered));
     }
 
-    public void remove(String beanName) {
-        load().removeBeanDefinition(beanName);
+    /**
+     * 注册已创建的单例，如热替换的代理
+     *
+     * @param beanName beanName
+     * @param bean     实例
+     */
+    public void registerSingleton(String beanName, Object bean) {
+        load().registerSingleton(beanName, bean);
+        applicationContext.publishEvent(new DynamicBeanEvent(this, beanName, DynamicBeanEvent.Type.Registered));
+    }
+
+    /**
+     * 在IOC之外创建实例并完成依赖注入与初始化，不注册到容器
+     *
+     * @param clz class
+     * @return 实例
+     */
+    public Object createBean(Class<?> clz) {
+        return load().createBean(clz);
+    }
+
+    /**
+     * 销毁createBean创建的实例，并清理spring对其class的缓存
+     *
+     * @param bean 实例
+     */
+    public void destroyBean(Object bean) {
+        load().destroyBean(bean);
+        clearCache(bean.getClass());
+    }
+
+    /**
+     * 移除bean并清理spring对其class的缓存，避免旧版本的classloader被spring持有
+     *
+     * @param beanName beanName
+     * @return bean的class，热替换的代理为当前目标的class，不存在时为null
+     */
+    public Class<?> remove(String beanName) {
+        DefaultListableBeanFactory beanFactory = load();
+        Class<?> type = targetClass(beanFactory, beanName);
+        if (beanFactory.containsBeanDefinition(beanName)) {
+            //同时销毁单例
+            beanFactory.removeBeanDefinition(beanName);
+        } else {
+            beanFactory.destroySingleton(beanName);
+        }
+        clearCache(type);
+        applicationContext.publishEvent(new DynamicBeanEvent(this, beanName, DynamicBeanEvent.Type.Removed));
+        return type;
+    }
+
+    public ClassLoader getClassLoader() {
+        return applicationContext.getClassLoader();
     }
 
     public Object getBean(String beanName) {
@@ -39,10 +95,37 @@ public class DynamicApplicationContext {
         return applicationContext.containsBean(beanName);
     }
 
+    public boolean isSingleton(String beanName) {
+        return applicationContext.isSingleton(beanName);
+    }
+
     public Object getBean(Class<?> clz) {
         return applicationContext.getBean(clz);
     }
 
+    /**
+     * 代理的class由宿主classloader加载，清理缓存与卸载需要目标的class
+     */
+    private Class<?> targetClass(DefaultListableBeanFactory beanFactory, String beanName) {
+        Object singleton = beanFactory.getSingleton(beanName);
+        if (singleton instanceof Advised) {
+            Class<?> targetClass = ((Advised) singleton).getTargetSource().getTargetClass();
+            if (null != targetClass) {
+                return targetClass;
+            }
+        }
+        return beanFactory.getType(beanName);
+    }
+
+    private void clearCache(Class<?> type) {
+        load().clearMetadataCache();
+        if (null != type) {
+            CachedIntrospectionResults.clearClassLoader(type.getClassLoader());
+        }
+        AnnotationUtils.clearCache();
+        ReflectionUtils.clearCache();
+    }
+
     private DefaultListableBeanFactory load() {
         return (DefaultListableBeanFactory) applicationContext.getAutowireCapableBeanFactory();
     }
@@ -0,0 +1,43 @@
+package me.zzpp.dynamic.spring.handler;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 动态bean注册或移除事件，由{@link DynamicApplicationContext}同步发布，用于失效按beanName缓存的调用目标
+ *
+ * @author zzpp
+ */
+public class DynamicBeanEvent extends ApplicationEvent {
+
+    private final String beanName;
+
+    private final Type type;
+
+    public DynamicBeanEvent(Object source, String beanName, Type type) {
+        super(source);
+        this.beanName = beanName;
+        this.type = type;
+    }
+
+    public String getBeanName() {
+        return beanName;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public enum Type {
+
+        /**
+         * 注册bean定义或单例
+         */
+        Registered,
+
+        /**
+         * 移除bean
+         */
+        Removed,
+        ;
+    }
+}
@@ -22,12 +22,23 @@ public interface DynamicBeanHandler {
     void loadBean(String javaCode) throws Exception;
 
     /**
+     * 加载bean，bean已由loadBean加载时热替换：新版本完成依赖注入与初始化后原子切换，进行中的调用不受影响，旧实例在调用结束后销毁。
+     * 注册到IOC的是jdk代理，其他bean可按宿主中的接口注入；没有宿主接口的bean直接注册，不支持热替换
+     *
      * @param className beanName（同时也是classname），注意:beanName必须与javaCode中的className保持一致
      * @param javaCode  java代码
      * @throws Exception
      */
     void loadBean(String className, String javaCode) throws Exception;
 
+    /**
+     * 卸载bean：从IOC中移除，并卸载对应的动态class
+     *
+     * @param beanName beanName
+     * @return bean是否存在
+     */
+    boolean unloadBean(String beanName);
+
     /**
      * 无参方法执行
      *
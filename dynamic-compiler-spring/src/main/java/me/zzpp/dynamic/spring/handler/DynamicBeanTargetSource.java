@@ -0,0 +1,253 @@
+package me.zzpp.dynamic.spring.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 动态bean的代理目标，代理注册到IOC，热替换时只切换目标实例。
+ * 调用路径无锁：每一代实例记录进行中的调用数，被替换后等调用全部结束再销毁
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class DynamicBeanTargetSource implements TargetSource {
+
+    private final String beanName;
+
+    /**
+     * 代理实现的宿主接口，之后的版本需要同样实现
+     */
+    private final Class<?>[] interfaces;
+
+    /**
+     * 销毁被替换的实例
+     */
+    private final Consumer<Object> destroyer;
+
+    private final AtomicReference<Generation> current;
+
+    /**
+     * 已被替换、仍有调用进行中的实例，一般为空
+     */
+    private final List<Generation> draining = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param beanName    beanName
+     * @param className   动态class的className
+     * @param target      首个版本的实例，已完成依赖注入与初始化
+     * @param classLoader 宿主classloader，只有其中可见的接口作为代理接口
+     * @param destroyer   销毁被替换的实例
+     */
+    public DynamicBeanTargetSource(String beanName, String className, Object target, ClassLoader classLoader, Consumer<Object> destroyer) {
+        this.beanName = beanName;
+        this.destroyer = destroyer;
+        this.interfaces = proxyInterfaces(target.getClass(), classLoader);
+        this.current = new AtomicReference<>(new Generation(className, target));
+    }
+
+    /**
+     * 是否可以热替换：代理只实现宿主接口，没有宿主接口时无法按类型注入与查找，应直接注册实例
+     *
+     * @param type        动态class
+     * @param classLoader 宿主classloader
+     * @return 实现了宿主classloader中可见的接口时为true
+     */
+    public static boolean isProxyable(Class<?> type, ClassLoader classLoader) {
+        return proxyInterfaces(type, classLoader).length > 0;
+    }
+
+    /**
+     * 创建注册到IOC的代理。
+     * 始终为jdk代理：cglib代理继承首个版本的class，替换后无法调用新版本的实例
+     *
+     * @param classLoader 代理的classloader
+     * @return 代理
+     * @throws IllegalStateException 没有宿主接口，见{@link #isProxyable(Class, ClassLoader)}
+     */
+    public Object proxy(ClassLoader classLoader) {
+        if (interfaces.length == 0) {
+            throw new IllegalStateException(String.format("bean %s 没有宿主接口，不能热替换", beanName));
+        }
+        ProxyFactory factory = new ProxyFactory();
+        factory.setTargetSource(this);
+        factory.setInterfaces(interfaces);
+        factory.addInterface(Advised.class);
+        return factory.getProxy(classLoader);
+    }
+
+    /**
+     * 原子替换目标实例，旧实例在进行中的调用结束后销毁
+     *
+     * @param className 新版本的className
+     * @param target    新版本的实例，已完成依赖注入与初始化
+     */
+    public synchronized void swap(String className, Object target) {
+        for (Class<?> type : interfaces) {
+            if (!type.isInstance(target)) {
+                throw new IllegalStateException(String.format("bean %s 新版本未实现代理接口 %s，需要卸载后重新加载", beanName, type.getName()));
+            }
+        }
+        Generation next = new Generation(className, target);
+        Generation old = current.get();
+        //先加入draining再切换，调用方归还旧实例时总能找到
+        draining.add(old);
+        current.set(next);
+        old.retire();
+        log.info("bean {} swapped, {} -> {}", beanName, old.target.getClass().getName(), target.getClass().getName());
+    }
+
+    /**
+     * 停止使用当前实例，进行中的调用结束后销毁
+     */
+    public synchronized void close() {
+        Generation old = current.get();
+        draining.add(old);
+        old.retire();
+    }
+
+    /**
+     * 在当前实例上执行，执行期间实例不会被销毁
+     *
+     * @param invocation 调用
+     * @return 返回值
+     */
+    public Object invoke(Invocation invocation) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        Generation generation = acquire();
+        try {
+            return invocation.invoke(generation.target);
+        } finally {
+            generation.release();
+        }
+    }
+
+    public String getClassName() {
+        return current.get().className;
+    }
+
+    @Override
+    public Class<?> getTargetClass() {
+        return current.get().target.getClass();
+    }
+
+    @Override
+    public boolean isStatic() {
+        return false;
+    }
+
+    @Override
+    public Object getTarget() {
+        return acquire().target;
+    }
+
+    @Override
+    public void releaseTarget(Object target) {
+        Generation generation = current.get();
+        if (generation.target == target) {
+            generation.release();
+            return;
+        }
+        for (Generation old : draining) {
+            if (old.target == target) {
+                old.release();
+                return;
+            }
+        }
+        log.warn("bean {} release unknown target {}", beanName, target.getClass().getName());
+    }
+
+    /**
+     * 动态编译的接口随版本变化，不能作为代理接口，只取宿主classloader中可见的
+     */
+    private static Class<?>[] proxyInterfaces(Class<?> type, ClassLoader classLoader) {
+        Set<Class<?>> all = ClassUtils.getAllInterfacesForClassAsSet(type);
+        List<Class<?>> visible = all.stream().filter(item -> ClassUtils.isVisible(item, classLoader)).collect(Collectors.toList());
+        return visible.toArray(new Class<?>[0]);
+    }
+
+    /**
+     * 获取当前实例并计数，当前实例刚被替换时重新获取
+     */
+    private Generation acquire() {
+        while (true) {
+            Generation generation = current.get();
+            if (generation.acquire()) {
+                return generation;
+            } else if (current.get() == generation) {
+                throw new IllegalStateException(String.format("bean %s 已卸载", beanName));
+            }
+        }
+    }
+
+    /**
+     * 在目标实例上的调用
+     */
+    @FunctionalInterface
+    public interface Invocation {
+
+        Object invoke(Object target) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException;
+    }
+
+    /**
+     * 一个版本的实例
+     */
+    private final class Generation {
+
+        private final String className;
+
+        private final Object target;
+
+        /**
+         * 低位为进行中的调用数，最高位为已替换标记
+         */
+        private final AtomicLong state = new AtomicLong();
+
+        private Generation(String className, Object target) {
+            this.className = className;
+            this.target = target;
+        }
+
+        private boolean acquire() {
+            long s;
+            do {
+                s = state.get();
+                if (s < 0) {
+                    return false;
+                }
+            } while (!state.compareAndSet(s, s + 1));
+            return true;
+        }
+
+        private void release() {
+            if (state.decrementAndGet() == Long.MIN_VALUE) {
+                destroy();
+            }
+        }
+
+        private void retire() {
+            if (state.getAndUpdate(s -> s | Long.MIN_VALUE) == 0) {
+                destroy();
+            }
+        }
+
+        private void destroy() {
+            draining.remove(this);
+            try {
+                destroyer.accept(target);
+            } catch (RuntimeException e) {
+                log.error("bean {} destroy old instance failed, {}", beanName, e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package me.zzpp.dynamic.spring.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zzpp.dynamic.core.handler.DynamicClassHandler;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * handler池，按租户选择handler。
+ * 每个handler的class缓存、classloader与编译锁相互独立，不同租户同名class互不覆盖，编译可以并行
+ *
+ * @author zzpp
+ */
+@Slf4j
+public class DynamicClassHandlerPool implements Closeable {
+
+    private static final String WARMUP_CLASS = "DynamicCompilerWarmup";
+
+    private final List<DynamicClassHandler> handlers;
+
+    public DynamicClassHandlerPool(List<DynamicClassHandler> handlers) {
+        if (handlers.isEmpty()) {
+            throw new IllegalArgumentException("handlers is empty");
+        }
+        this.handlers = Collections.unmodifiableList(new ArrayList<>(handlers));
+    }
+
+    /**
+     * @return 默认handler，即第一个handler
+     */
+    public DynamicClassHandler getDefault() {
+        return handlers.get(0);
+    }
+
+    /**
+     * 获取租户的handler，同一租户总是对应同一个handler
+     *
+     * @param tenant 租户，为空时返回默认handler
+     * @return handler
+     */
+    public DynamicClassHandler get(String tenant) {
+        if (null == tenant) {
+            return getDefault();
+        }
+        int h = tenant.hashCode();
+        return handlers.get(((h ^ (h >>> 16)) & 0x7fffffff) % handlers.size());
+    }
+
+    public List<DynamicClassHandler> getHandlers() {
+        return handlers;
+    }
+
+    public int size() {
+        return handlers.size();
+    }
+
+    /**
+     * 每个handler编译并卸载一个空class，提前加载javac并完成jit
+     */
+    public void warmup() {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < handlers.size(); i++) {
+            String className = WARMUP_CLASS + i;
+            DynamicClassHandler handler = handlers.get(i);
+            try {
+                handler.loadClass(className, "public class " + className + " { public int run() { return " + i + "; } }");
+                handler.unload(className);
+            } catch (Exception e) {
+                log.warn("dynamic compiler warmup failed, {}", e.getMessage());
+                return;
+            }
+        }
+        log.info("dynamic compiler warmup end, handlers:{}, time consuming:{}ms", handlers.size(), System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void close() {
+        for (DynamicClassHandler handler : handlers) {
+            handler.close();
+        }
+    }
+}
@@ -2,14 +2,18 @@ package me.zzpp.dynamic.spring.handler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import me.zzpp.dynamic.core.handler.DefaultDynamicClassHandlerImpl;
 import me.zzpp.dynamic.core.handler.DynamicClassHandler;
+import me.zzpp.dynamic.core.invoke.MethodInvokers;
 import me.zzpp.dynamic.core.utils.DynamicClassUtils;
 import me.zzpp.dynamic.core.utils.NameConversionUtils;
-import org.apache.commons.lang3.reflect.MethodUtils;
+import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 动态编译bean接口实现
@@ -19,15 +23,33 @@ import java.lang.reflect.InvocationTargetException;
 @Component
 @RequiredArgsConstructor
 @Slf4j
-public class DynamicCompilerHandler implements DynamicBeanHandler {
-
-    private static final DynamicClassHandler classHandler = new DefaultDynamicClassHandlerImpl(DynamicClassHandler.CompilerType.Cmd);
+public class DynamicCompilerHandler implements DynamicBeanHandler, ApplicationListener<DynamicBeanEvent> {
 
     private final DynamicApplicationContext applicationContext;
 
+    /**
+     * bean使用池中的默认handler，handler由池创建与关闭
+     */
+    private final DynamicClassHandlerPool handlerPool;
+
+    /**
+     * 热替换的代理目标，key:beanName
+     */
+    private final Map<String, DynamicBeanTargetSource> targetSources = new ConcurrentHashMap<>();
+
+    /**
+     * 调用目标缓存，key:beanName，收到{@link DynamicBeanEvent}时失效
+     */
+    private final Map<String, BeanInvocation> invocations = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存失效次数，用于丢弃失效期间建立的缓存
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
     @Override
     public DynamicClassHandler getClassHandler(){
-        return classHandler;
+        return handlerPool.getDefault();
     }
 
 
@@ -38,29 +60,68 @@ public class DynamicCompilerHandler implements DynamicBeanHandler {
         loadBean(beanName, javaCode);
     }
 
+    /**
+     * 新版本在IOC之外完成创建、依赖注入与初始化后，一次性切换代理的目标实例；
+     * 切换前出现异常时继续使用旧版本，旧实例在进行中的调用结束后销毁
+     */
     @Override
-    public void loadBean(String beanName, String javaCode) throws Exception {
-        boolean hasBean = applicationContext.hasBean(beanName);
-        if (hasBean) {
+    public synchronized void loadBean(String beanName, String javaCode) throws Exception {
+        DynamicBeanTargetSource targetSource = targetSources.get(beanName);
+        if (null == targetSource && applicationContext.hasBean(beanName)) {
             log.error("the bean {} is already exists!", beanName);
             return;
         }
-        Class<?> aClass = classHandler.loadClass(javaCode);
-        log.info("loadBean，inject bean to IOC, {} start", beanName);
-        applicationContext.registerBean(beanName, aClass);
+        String className = DynamicClassUtils.getClassName(javaCode);
+        Class<?> aClass = getClassHandler().loadClass(javaCode);
+        if (null == targetSource && !DynamicBeanTargetSource.isProxyable(aClass, applicationContext.getClassLoader())) {
+            //没有宿主接口时代理无法按类型注入，直接注册，不支持热替换
+            log.warn("loadBean，bean {} has no host interface, register without hot swap", beanName);
+            applicationContext.registerBean(beanName, aClass);
+            log.info("loadBean，inject bean to IOC, {} end", beanName);
+            return;
+        }
+        log.info("loadBean，create bean {} start", beanName);
+        Object bean = applicationContext.createBean(aClass);
+        if (null != targetSource) {
+            try {
+                targetSource.swap(className, bean);
+            } catch (RuntimeException e) {
+                applicationContext.destroyBean(bean);
+                throw e;
+            }
+            log.info("loadBean，swap bean {} end", beanName);
+            return;
+        }
+        targetSource = new DynamicBeanTargetSource(beanName, className, bean, applicationContext.getClassLoader(), this::destroyBean);
+        //先登记再注册，调用方缓存的总是代理目标而不是代理
+        targetSources.put(beanName, targetSource);
+        applicationContext.registerSingleton(beanName, targetSource.proxy(applicationContext.getClassLoader()));
         log.info("loadBean，inject bean to IOC, {} end", beanName);
     }
 
     @Override
-    public Object invoke(String beanName, String methodName) {
-        boolean hasBean = applicationContext.hasBean(beanName);
-        if (!hasBean) {
+    public synchronized boolean unloadBean(String beanName) {
+        if (!applicationContext.hasBean(beanName)) {
             log.error("the bean {} is not found!", beanName);
-            return null;
+            return false;
         }
+        log.info("unloadBean，remove bean from IOC, {} start", beanName);
+        Class<?> type = applicationContext.remove(beanName);
+        DynamicBeanTargetSource targetSource = targetSources.remove(beanName);
+        if (null != targetSource) {
+            targetSource.close();
+            getClassHandler().unload(targetSource.getClassName());
+        } else if (null != type) {
+            getClassHandler().unload(type.getSimpleName());
+        }
+        log.info("unloadBean，remove bean from IOC, {} end", beanName);
+        return true;
+    }
+
+    @Override
+    public Object invoke(String beanName, String methodName) {
         try {
-            Object bean = applicationContext.getBean(beanName);
-            return MethodUtils.invokeExactMethod(bean, methodName);
+            return doInvoke(beanName, methodName, null, null);
         } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
             log.error("execute method failed，{}::{}", beanName, methodName);
             log.error("execute method failed errMsg : {}", e.getMessage(), e);
@@ -70,18 +131,90 @@ public class DynamicCompilerHandler implements DynamicBeanHandler {
 
     @Override
     public Object invoke(String beanName, String methodName, Class<?>[] parameterTypes, Object[] args) throws InvocationTargetException, NoSuchMethodException, IllegalAccessException {
-        boolean hasBean = applicationContext.hasBean(beanName);
-        if (!hasBean) {
-            log.error("the bean {} is not found!", beanName);
-            return null;
-        }
         try {
-            Object bean = applicationContext.getBean(beanName);
-            return MethodUtils.invokeExactMethod(bean, methodName, args, parameterTypes);
+            return doInvoke(beanName, methodName, parameterTypes, args);
         } catch (NoSuchMethodException | IllegalAccessException e) {
             log.error("execute method failed，{}::{}", beanName, methodName);
             log.error("execute method errMsg : {}", e.getMessage(), e);
             throw e;
         }
     }
+
+    /**
+     * 缓存命中时没有bean工厂查找与反射查找，只有一次方法句柄调用
+     */
+    private Object doInvoke(String beanName, String methodName, Class<?>[] parameterTypes, Object[] args) throws InvocationTargetException, NoSuchMethodException, IllegalAccessException {
+        BeanInvocation invocation = invocation(beanName);
+        if (null == invocation) {
+            log.error("the bean {} is not found!", beanName);
+            return null;
+        }
+        return invocation.invoke(methodName, parameterTypes, args);
+    }
+
+    /**
+     * 获取bean的调用目标，单例与热替换的bean缓存到bean被注册或移除
+     *
+     * @return 调用目标，bean不存在时为null
+     */
+    private BeanInvocation invocation(String beanName) {
+        BeanInvocation invocation = invocations.get(beanName);
+        if (null != invocation) {
+            return invocation;
+        }
+        long version = invalidations.get();
+        if (!applicationContext.hasBean(beanName)) {
+            return null;
+        }
+        DynamicBeanTargetSource targetSource = targetSources.get(beanName);
+        if (null == targetSource && !applicationContext.isSingleton(beanName)) {
+            //非单例每次获取新实例，不缓存
+            return new BeanInvocation(null, applicationContext.getBean(beanName));
+        }
+        invocation = new BeanInvocation(targetSource, null == targetSource ? applicationContext.getBean(beanName) : null);
+        invocations.put(beanName, invocation);
+        //期间有bean被注册或移除时不保留，下次调用重新获取
+        if (invalidations.get() != version) {
+            invocations.remove(beanName, invocation);
+        }
+        return invocation;
+    }
+
+    @Override
+    public void onApplicationEvent(DynamicBeanEvent event) {
+        invalidations.incrementAndGet();
+        invocations.remove(event.getBeanName());
+    }
+
+    /**
+     * 被替换的实例在最后一个调用结束的线程上触发销毁，销毁回调放到公共线程池执行，不阻塞该调用
+     */
+    private void destroyBean(Object bean) {
+        CompletableFuture.runAsync(() -> {
+            applicationContext.destroyBean(bean);
+            log.info("old bean instance {} destroyed", bean.getClass().getName());
+        });
+    }
+
+    /**
+     * bean的调用目标：热替换的bean每次取当前实例，其他bean为缓存的实例；方法句柄按class缓存
+     */
+    private static final class BeanInvocation {
+
+        private final DynamicBeanTargetSource targetSource;
+
+        private final Object bean;
+
+        private BeanInvocation(DynamicBeanTargetSource targetSource, Object bean) {
+            this.targetSource = targetSource;
+            this.bean = bean;
+        }
+
+        private Object invoke(String methodName, Class<?>[] parameterTypes, Object[] args) throws InvocationTargetException, NoSuchMethodException, IllegalAccessException {
+            if (null != targetSource) {
+                return targetSource.invoke(target -> MethodInvokers.publicMethod(target.getClass(), methodName, parameterTypes).invoke(target, args));
+            }
+            return MethodInvokers.publicMethod(bean.getClass(), methodName, parameterTypes).invoke(bean, args);
+        }
+    }
 }
@@ -0,0 +1,20 @@
+package me.zzpp.dynamic.spring.metrics;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * classpath中存在micrometer时注册编译过程监听，由spring boot绑定到MeterRegistry
+ *
+ * @author zzpp
+ */
+@Configuration
+@ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+public class DynamicMetricsConfiguration {
+
+    @Bean
+    public MicrometerCompileListener micrometerCompileListener() {
+        return new MicrometerCompileListener();
+    }
+}
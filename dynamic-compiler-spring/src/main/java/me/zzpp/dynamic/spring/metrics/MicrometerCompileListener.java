@@ -0,0 +1,136 @@
+package me.zzpp.dynamic.spring.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import me.zzpp.dynamic.core.metrics.DynamicCompileListener;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编译过程监听的micrometer实现，绑定到MeterRegistry之前不记录。
+ * <ul>
+ *     <li>dynamic.compiler.phase：各阶段耗时，tag phase</li>
+ *     <li>dynamic.compiler.cache：编译结果缓存，tag result=hit/miss</li>
+ *     <li>dynamic.compiler.bytecode.size：每次编译的字节码大小</li>
+ *     <li>dynamic.compiler.classes.loaded：加载的动态class个数，每个className每次加载计一次</li>
+ *     <li>dynamic.compiler.failures：编译失败次数</li>
+ *     <li>dynamic.compiler.invoke：方法执行耗时直方图，tag outcome=success/error</li>
+ * </ul>
+ * 为避免标签基数过高，className与方法名不作为tag
+ *
+ * @author zzpp
+ */
+public class MicrometerCompileListener implements DynamicCompileListener, MeterBinder {
+
+    private volatile Meters meters;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meters = new Meters(registry);
+    }
+
+    @Override
+    public void onPhase(String className, Phase phase, long nanos) {
+        Meters meters = this.meters;
+        if (null != meters) {
+            meters.phases.get(phase).record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void onCacheHit(String className) {
+        Meters meters = this.meters;
+        if (null != meters) {
+            meters.cacheHit.increment();
+        }
+    }
+
+    @Override
+    public void onCacheMiss(String className) {
+        Meters meters = this.meters;
+        if (null != meters) {
+            meters.cacheMiss.increment();
+        }
+    }
+
+    @Override
+    public void onCompiled(String className, int classes, long bytes) {
+        Meters meters = this.meters;
+        if (null != meters) {
+            meters.byteCodeSize.record(bytes);
+        }
+    }
+
+    @Override
+    public void onCompileFailed(String className, Throwable e) {
+        Meters meters = this.meters;
+        if (null != meters) {
+            meters.failures.increment();
+        }
+    }
+
+    @Override
+    public void onLoaded(String className, Class<?> clz, int classes) {
+        Meters meters = this.meters;
+        //classes为loader中的class总数，同一loader的每个class都会上报一次，不能累加
+        if (null != meters) {
+            meters.loaded.increment();
+        }
+    }
+
+    @Override
+    public void onInvoke(Class<?> clz, String methodName, long nanos, boolean success) {
+        Meters meters = this.meters;
+        if (null != meters) {
+            (success ? meters.invokeSuccess : meters.invokeError).record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static class Meters {
+
+        private final Map<Phase, Timer> phases = new EnumMap<>(Phase.class);
+
+        private final Counter cacheHit;
+
+        private final Counter cacheMiss;
+
+        private final DistributionSummary byteCodeSize;
+
+        private final Counter loaded;
+
+        private final Counter failures;
+
+        private final Timer invokeSuccess;
+
+        private final Timer invokeError;
+
+        private Meters(MeterRegistry registry) {
+            for (Phase phase : Phase.values()) {
+                phases.put(phase, Timer.builder("dynamic.compiler.phase")
+                        .description("dynamic class load phase latency")
+                        .tag("phase", phase.name().toLowerCase())
+                        .register(registry));
+            }
+            cacheHit = Counter.builder("dynamic.compiler.cache").tag("result", "hit").register(registry);
+            cacheMiss = Counter.builder("dynamic.compiler.cache").tag("result", "miss").register(registry);
+            byteCodeSize = DistributionSummary.builder("dynamic.compiler.bytecode.size").baseUnit("bytes").register(registry);
+            loaded = Counter.builder("dynamic.compiler.classes.loaded").register(registry);
+            failures = Counter.builder("dynamic.compiler.failures").register(registry);
+            invokeSuccess = invokeTimer(registry, "success");
+            invokeError = invokeTimer(registry, "error");
+        }
+
+        private static Timer invokeTimer(MeterRegistry registry, String outcome) {
+            return Timer.builder("dynamic.compiler.invoke")
+                    .description("dynamic method invoke latency")
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
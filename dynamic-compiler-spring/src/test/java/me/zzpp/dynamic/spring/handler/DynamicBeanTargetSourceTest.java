@@ -0,0 +1,168 @@
+package me.zzpp.dynamic.spring.handler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * DynamicBeanTargetSource热替换：调用进行中替换、缺少代理接口的替换被拒绝、卸载后调用、没有宿主接口的bean不代理
+ *
+ * @author zzpp
+ */
+public class DynamicBeanTargetSourceTest {
+
+    public static void main(String[] args) throws Exception {
+        swapWhileInFlight();
+        rejectDroppedInterface();
+        callAfterClose();
+        noHostInterface();
+        System.out.println("DynamicBeanTargetSourceTest passed");
+    }
+
+    /**
+     * 旧实例上的调用未结束时不销毁，结束后才销毁；替换后的新调用使用新实例
+     */
+    private static void swapWhileInFlight() throws Exception {
+        List<Object> destroyed = new CopyOnWriteArrayList<>();
+        V1 v1 = new V1();
+        V2 v2 = new V2();
+        DynamicBeanTargetSource targetSource = targetSource(v1, destroyed);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Object> result = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                result.set(targetSource.invoke(target -> {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return ((Greeter) target).greet();
+                }));
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        caller.start();
+        check(entered.await(5, TimeUnit.SECONDS), "call did not start");
+
+        targetSource.swap("V2", v2);
+        check(destroyed.isEmpty(), "old instance destroyed while a call is in flight");
+        check("V2".equals(targetSource.getClassName()), "class name not swapped");
+        check(V2.class == targetSource.getTargetClass(), "target class not swapped");
+        check("v2".equals(targetSource.invoke(target -> ((Greeter) target).greet())), "new call not on new instance");
+
+        //代理的获取与归还，归还旧实例同样计数
+        Object target = targetSource.getTarget();
+        check(v2 == target, "getTarget not new instance");
+        targetSource.releaseTarget(target);
+
+        release.countDown();
+        caller.join(TimeUnit.SECONDS.toMillis(5));
+        check(null == failure.get(), "in flight call failed: " + failure.get());
+        check("v1".equals(result.get()), "in flight call not on old instance");
+        check(destroyed.size() == 1 && destroyed.get(0) == v1, "old instance not destroyed after release: " + destroyed);
+    }
+
+    /**
+     * 新版本不再实现代理接口时拒绝替换，当前实例保持不变
+     */
+    private static void rejectDroppedInterface() throws Exception {
+        List<Object> destroyed = new CopyOnWriteArrayList<>();
+        V1 v1 = new V1();
+        DynamicBeanTargetSource targetSource = targetSource(v1, destroyed);
+        try {
+            targetSource.swap("NoGreeter", new NoGreeter());
+            throw new AssertionError("swap without proxy interface accepted");
+        } catch (IllegalStateException expected) {
+            check(expected.getMessage().contains(Greeter.class.getName()), "message without interface name: " + expected.getMessage());
+        }
+        check("V1".equals(targetSource.getClassName()), "rejected swap changed class name");
+        check("v1".equals(targetSource.invoke(target -> ((Greeter) target).greet())), "rejected swap changed target");
+        check(destroyed.isEmpty(), "rejected swap destroyed current instance");
+    }
+
+    /**
+     * 卸载后当前实例销毁，之后的调用失败
+     */
+    private static void callAfterClose() throws Exception {
+        List<Object> destroyed = new CopyOnWriteArrayList<>();
+        V1 v1 = new V1();
+        DynamicBeanTargetSource targetSource = targetSource(v1, destroyed);
+        targetSource.close();
+        check(destroyed.size() == 1 && destroyed.get(0) == v1, "instance not destroyed on close: " + destroyed);
+        try {
+            targetSource.invoke(target -> ((Greeter) target).greet());
+            throw new AssertionError("invoke after close succeeded");
+        } catch (IllegalStateException expected) {
+            //已卸载
+        }
+        try {
+            targetSource.getTarget();
+            throw new AssertionError("getTarget after close succeeded");
+        } catch (IllegalStateException expected) {
+            //已卸载
+        }
+        check(destroyed.size() == 1, "instance destroyed twice: " + destroyed);
+    }
+
+    /**
+     * 没有宿主接口的bean不能热替换，拒绝创建只实现Advised的代理
+     */
+    private static void noHostInterface() {
+        ClassLoader classLoader = DynamicBeanTargetSourceTest.class.getClassLoader();
+        check(DynamicBeanTargetSource.isProxyable(V1.class, classLoader), "bean with host interface not proxyable");
+        check(!DynamicBeanTargetSource.isProxyable(NoGreeter.class, classLoader), "bean without host interface proxyable");
+        DynamicBeanTargetSource targetSource = targetSource(new NoGreeter(), new CopyOnWriteArrayList<>());
+        try {
+            targetSource.proxy(classLoader);
+            throw new AssertionError("proxy without host interface created");
+        } catch (IllegalStateException expected) {
+            check(expected.getMessage().contains("greeter"), "message without bean name: " + expected.getMessage());
+        }
+    }
+
+    private static DynamicBeanTargetSource targetSource(Object target, List<Object> destroyed) {
+        return new DynamicBeanTargetSource("greeter", target.getClass().getSimpleName(), target,
+                DynamicBeanTargetSourceTest.class.getClassLoader(), destroyed::add);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public interface Greeter {
+
+        String greet();
+    }
+
+    public static class V1 implements Greeter {
+
+        @Override
+        public String greet() {
+            return "v1";
+        }
+    }
+
+    public static class V2 implements Greeter {
+
+        @Override
+        public String greet() {
+            return "v2";
+        }
+    }
+
+    public static class NoGreeter {
+
+        public String greet() {
+            return "none";
+        }
+    }
+}